@@ -0,0 +1,122 @@
+package com.googlecode.slotted.testharness.benchmark;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Writes the sources for {@link com.googlecode.slotted.testharness.benchmark.client.PlaceBenchmarkTests}.  For
+ * each size it writes that many Places in their own package, a module that only scans that package, and the
+ * test for the module.  This runs with the JDK only, from the "benchmark" target of build.xml.
+ *
+ * Usage: PlaceBenchmarkSources outputDir size...
+ */
+public class PlaceBenchmarkSources {
+    private static final String BenchmarkPackage = "com.googlecode.slotted.testharness.benchmark";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: PlaceBenchmarkSources outputDir size...");
+            System.exit(1);
+        }
+
+        File outputDir = new File(args[0]);
+        for (int i = 1; i < args.length; i++) {
+            writeSources(outputDir, Integer.parseInt(args[i]));
+        }
+    }
+
+    private static void writeSources(File outputDir, int size) throws IOException {
+        String placesPackage = getPlacesPackage(size);
+        File placesDir = new File(outputDir, placesPackage.replace('.', File.separatorChar));
+        if (!placesDir.isDirectory() && !placesDir.mkdirs()) {
+            throw new IOException("Couldn't create " + placesDir);
+        }
+
+        for (int i = 0; i < size; i++) {
+            writePlace(placesDir, placesPackage, i);
+        }
+        writeTest(placesDir, placesPackage, size);
+        writeModule(placesDir.getParentFile(), size);
+    }
+
+    private static String getPlacesPackage(int size) {
+        return BenchmarkPackage + ".places" + size;
+    }
+
+    private static void writePlace(File placesDir, String placesPackage, int index) throws IOException {
+        PrintWriter writer = new PrintWriter(new FileWriter(new File(placesDir, "Dummy" + index + "Place.java")));
+        try {
+            writer.println("package " + placesPackage + ";");
+            writer.println();
+            writer.println("import com.googlecode.slotted.client.Slot;");
+            writer.println("import com.googlecode.slotted.client.SlottedController;");
+            writer.println("import com.googlecode.slotted.client.SlottedPlace;");
+            writer.println("import com.googlecode.slotted.client.TokenizerParameter;");
+            writer.println();
+            writer.println("public class Dummy" + index + "Place extends SlottedPlace {");
+            writer.println("    @TokenizerParameter");
+            writer.println("    public int value = " + index + ";");
+            writer.println();
+            writer.println("    @Override public Slot getParentSlot() {");
+            writer.println("        return SlottedController.RootSlot;");
+            writer.println("    }");
+            writer.println();
+            writer.println("    @Override public Slot[] getChildSlots() {");
+            writer.println("        return null;");
+            writer.println("    }");
+            writer.println("}");
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static void writeTest(File placesDir, String placesPackage, int size) throws IOException {
+        String testName = "PlaceBenchmark" + size + "Tests";
+        PrintWriter writer = new PrintWriter(new FileWriter(new File(placesDir, testName + ".java")));
+        try {
+            writer.println("package " + placesPackage + ";");
+            writer.println();
+            writer.println("import " + BenchmarkPackage + ".client.PlaceBenchmarkTests;");
+            writer.println();
+            writer.println("public class " + testName + " extends PlaceBenchmarkTests {");
+            writer.println("    @Override public String getModuleName() {");
+            writer.println("        return \"" + BenchmarkPackage + ".PlaceBenchmark" + size + "\";");
+            writer.println("    }");
+            writer.println();
+            writer.println("    @Override protected Class[] getPlaceClasses() {");
+            writer.println("        return new Class[] {");
+            for (int i = 0; i < size; i++) {
+                writer.println("            Dummy" + i + "Place.class,");
+            }
+            writer.println("        };");
+            writer.println("    }");
+            writer.println("}");
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static void writeModule(File benchmarkDir, int size) throws IOException {
+        PrintWriter writer = new PrintWriter(new FileWriter(new File(benchmarkDir, "PlaceBenchmark" + size + ".gwt.xml")));
+        try {
+            writer.println("<!DOCTYPE module PUBLIC \"-//Google Inc.//DTD Google Web Toolkit 2.0//EN\"");
+            writer.println("        \"http://google-web-toolkit.googlecode.com/svn/releases/2.0/distro-source/core/src/gwt-module.dtd\">");
+            writer.println("<module>");
+            writer.println();
+            writer.println("    <inherits name='com.google.gwt.user.User'/>");
+            writer.println("    <inherits name=\"com.googlecode.slotted.Slotted\"/>");
+            writer.println();
+            writer.println("    <source path=\"client\"/>");
+            writer.println("    <source path=\"places" + size + "\"/>");
+            writer.println();
+            writer.println("    <extend-configuration-property name=\"slotted.place.scan.package\" value=\"" +
+                    getPlacesPackage(size) + "\"/>");
+            writer.println();
+            writer.println("</module>");
+        } finally {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.googlecode.slotted.testharness.benchmark.client;
+
+import com.google.gwt.core.client.Duration;
+import com.google.gwt.core.client.GWT;
+import com.google.gwt.junit.client.GWTTestCase;
+import com.googlecode.slotted.client.AutoHistoryMapper;
+import com.googlecode.slotted.client.HistoryMapper;
+import com.googlecode.slotted.client.PlaceFactory;
+import com.googlecode.slotted.client.SlottedPlace;
+
+/**
+ * Times {@link PlaceFactory#newInstance(Class)} and {@link HistoryMapper#parseToken(String)} for the Places
+ * written by {@link com.googlecode.slotted.testharness.benchmark.PlaceBenchmarkSources}.  Each size has its own
+ * module, so the generated PlaceFactory and AutoHistoryMapper only contain that many Places.  Every test makes the
+ * same number of calls, so the times can be compared between sizes.
+ */
+abstract public class PlaceBenchmarkTests extends GWTTestCase {
+    private static final int Calls = 60000;
+    private static final int WarmupCalls = 6000;
+
+    /**
+     * Gets the generated Place classes of this size.
+     */
+    protected abstract Class[] getPlaceClasses();
+
+    public void testNewInstance() {
+        PlaceFactory placeFactory = GWT.create(PlaceFactory.class);
+        Class[] placeClasses = getPlaceClasses();
+
+        newInstances(placeFactory, placeClasses, WarmupCalls);
+        double start = Duration.currentTimeMillis();
+        newInstances(placeFactory, placeClasses, Calls);
+        report("PlaceFactory.newInstance()", placeClasses.length, start);
+    }
+
+    public void testParseToken() {
+        PlaceFactory placeFactory = GWT.create(PlaceFactory.class);
+        HistoryMapper historyMapper = GWT.create(AutoHistoryMapper.class);
+        // Every call should parse its token, instead of timing the cache.
+        historyMapper.getParsedTokenCache().setMaxSize(0);
+
+        Class[] placeClasses = getPlaceClasses();
+        String[] tokens = new String[placeClasses.length];
+        for (int i = 0; i < placeClasses.length; i++) {
+            tokens[i] = historyMapper.createToken((SlottedPlace) placeFactory.newInstance(placeClasses[i]));
+        }
+
+        parseTokens(historyMapper, tokens, WarmupCalls);
+        double start = Duration.currentTimeMillis();
+        parseTokens(historyMapper, tokens, Calls);
+        report("HistoryMapper.parseToken()", placeClasses.length, start);
+    }
+
+    private void newInstances(PlaceFactory placeFactory, Class[] placeClasses, int calls) {
+        for (int i = 0; i < calls; i++) {
+            if (placeFactory.newInstance(placeClasses[i % placeClasses.length]) == null) {
+                fail("PlaceFactory couldn't create " + placeClasses[i % placeClasses.length].getName());
+            }
+        }
+    }
+
+    private void parseTokens(HistoryMapper historyMapper, String[] tokens, int calls) {
+        for (int i = 0; i < calls; i++) {
+            if (historyMapper.parseToken(tokens[i % tokens.length]).length != 1) {
+                fail("HistoryMapper didn't parse " + tokens[i % tokens.length]);
+            }
+        }
+    }
+
+    private void report(String method, int places, double start) {
+        double elapsed = Duration.currentTimeMillis() - start;
+        System.out.println(method + " with " + places + " Places: " + Calls + " calls in " + elapsed + "ms, " +
+                (elapsed * 1000 / Calls) + "us per call");
+    }
+}
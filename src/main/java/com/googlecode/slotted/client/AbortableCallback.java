@@ -0,0 +1,68 @@
+package com.googlecode.slotted.client;
+
+import com.google.gwt.core.client.Callback;
+import com.google.gwt.user.client.Command;
+
+/**
+ * Callback used by the SlottedController when an Activity is requested asynchronously from
+ * {@link SlottedPlace#getActivity(Callback)}, a {@link CodeSplitMapper} or an {@link AsyncActivityMapper}.
+ * If the navigation that made the request is dropped or fails, the callback is aborted and any
+ * result passed to it is ignored.
+ *
+ * Implementations that do expensive work, like loading data for the Activity, can check
+ * {@link #isAborted()} or set an abort handler to cancel the work when it is no longer needed.
+ *
+ * @param <T> The type returned on success
+ * @param <F> The type returned on failure
+ */
+public abstract class AbortableCallback<T, F> implements Callback<T, F> {
+    private boolean aborted;
+    private boolean finished;
+    private Command abortHandler;
+
+    /**
+     * Returns true if the request is no longer needed.
+     */
+    public boolean isAborted() {
+        return aborted;
+    }
+
+    /**
+     * Sets a Command that is executed when the request is aborted.  If the request was already
+     * aborted, the Command is executed immediately.
+     *
+     * @param abortHandler The Command that cancels the work for this request.
+     */
+    public void setAbortHandler(Command abortHandler) {
+        this.abortHandler = abortHandler;
+        if (aborted && abortHandler != null) {
+            abortHandler.execute();
+        }
+    }
+
+    /**
+     * Called by Slotted when the request is no longer needed.  Nothing is done if the callback has
+     * already received its result.
+     */
+    public void abort() {
+        if (!aborted && !finished) {
+            aborted = true;
+            if (abortHandler != null) {
+                abortHandler.execute();
+            }
+        }
+    }
+
+    /**
+     * Marks the callback as having received its result, so it can no longer be aborted.
+     *
+     * @return false if the callback was aborted or already received a result.
+     */
+    protected boolean finish() {
+        if (aborted || finished) {
+            return false;
+        }
+        finished = true;
+        return true;
+    }
+}
@@ -16,19 +16,16 @@
 package com.googlecode.slotted.client;
 
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 import java.util.logging.Level;
 
 import com.google.gwt.activity.shared.Activity;
 import com.google.gwt.activity.shared.ActivityMapper;
-import com.google.gwt.core.client.Callback;
 import com.google.gwt.user.client.ui.AcceptsOneWidget;
 import com.google.gwt.user.client.ui.IsWidget;
 import com.google.web.bindery.event.shared.EventBus;
 import com.google.web.bindery.event.shared.ResettableEventBus;
 import com.googlecode.slotted.client.ActivityCache.Entry;
-import com.googlecode.slotted.client.SlottedController.RootSlotImpl;
 
 /**
  * An internal object that holds all the data needed to correctly display a Slot.  This shouldn't be used outside
@@ -80,6 +77,7 @@ public class ActiveSlot {
     private ProtectedDisplay currentProtectedDisplay;
     private SlottedController slottedController;
     private HistoryMapper historyMapper;
+    private EventBus eventBus;
     private ResettableEventBus resettableEventBus;
 
     public ActiveSlot(ActiveSlot parent, Slot slot, EventBus eventBus,
@@ -89,6 +87,7 @@ public class ActiveSlot {
         this.slot = slot;
         this.slottedController = slottedController;
         this.historyMapper = slottedController.getHistoryMapper();
+        this.eventBus = eventBus;
         this.resettableEventBus = new ResettableEventBus(eventBus);
     }
 
@@ -103,9 +102,21 @@ public class ActiveSlot {
      * @param warnings The list of warnings that are generated by mayStop() calls.
      */
     public void maybeGoTo(Iterable<SlottedPlace> newPlaces, boolean reloadAll, ArrayList<String> warnings) {
+        maybeGoTo(new NavigationDiff(this, newPlaces, reloadAll), reloadAll, warnings);
+    }
+
+    /**
+     * Same as {@link #maybeGoTo(Iterable, boolean, ArrayList)}, but uses a precomputed NavigationDiff.  Child Slots
+     * are only checked if the diff has a change in their part of the hierarchy.
+     *
+     * @param diff The difference between the displayed hierarchy and the new Places.
+     * @param reloadAll If true, it ignores the Place equals and calls mayStop()
+     * @param warnings The list of warnings that are generated by mayStop() calls.
+     */
+    public void maybeGoTo(NavigationDiff diff, boolean reloadAll, ArrayList<String> warnings) {
         ActivityCache activityCache = slottedController.getActivityCache();
         boolean checkMayStop = false;
-        newPlace = getPlace(newPlaces);
+        newPlace = getPlace(diff);
 
         List<Class<? extends SlottedPlace>> placesOfActivitiesToCache = historyMapper.getPlacesOfActivitiesToCache(newPlace);
         activityCache.markForBackground(placesOfActivitiesToCache);
@@ -118,9 +129,9 @@ public class ActiveSlot {
             checkMayStop = true;
             reloadAll = true;
         }
-        if (children != null) {
+        if (children != null && (reloadAll || diff.isDirty(this))) {
             for (ActiveSlot child : children) {
-                child.maybeGoTo(newPlaces, reloadAll, warnings);
+                child.maybeGoTo(diff, reloadAll, warnings);
             }
         }
 
@@ -160,29 +171,33 @@ public class ActiveSlot {
     }
 
     /**
-     * Finds the ActiveSlot by determining if this ActiveSlot has the slotToFind or checking the children recursively.
+     * Finds the ActiveSlot for the slotToFind in this ActiveSlot or its descendants.  The lookup uses the
+     * SlottedController's index of all ActiveSlots, so it doesn't search the hierarchy.
      *
      * @param slotToFind The Slot instance that an ActiveSlot represents.
      * @return The ActiveSlot, or null if the slotToFind isn't in the hierarchy
      */
     public ActiveSlot findSlot(Slot slotToFind) {
-        ActiveSlot found = null;
         if (slotToFind == null) {
-            found = null;
-        } else if (slotToFind.equals(slot)) {
-            found = this;
-        } else if (children != null) {
-            Iterator<ActiveSlot> childIt = children.iterator();
-            while (found == null && childIt.hasNext()) {
-                ActiveSlot child = childIt.next();
-                found = child.findSlot(slotToFind);
+            return null;
+        }
+        // The index covers the whole hierarchy, so make sure the found ActiveSlot is below this one.
+        for (ActiveSlot found: slottedController.getActiveSlots(slotToFind)) {
+            ActiveSlot ancestor = found;
+            while (ancestor != null && ancestor != this) {
+                ancestor = ancestor.parent;
+            }
+            if (ancestor == this) {
+                return found;
             }
         }
-        return found;
+        return null;
     }
 
     /**
      * Stops the current Activity and all child Activities.  It also resets the EventBus to prevent memory leaks.
+     * A backgrounded Activity keeps its handlers, so its EventBus is kept in the ActivityCache and the next
+     * Activity gets a new one.
      */
     public void stopActivities() {
         boolean backgrounded = false;
@@ -191,7 +206,7 @@ public class ActiveSlot {
             if (activity != null) {
                 if (activityCache.isMarkedForBackground(place)) {
                     backgrounded = true;
-                    activityCache.setBackgrounded(place);
+                    activityCache.setBackgrounded(place, slot, resettableEventBus);
                     if (activity instanceof SlottedActivity) {
                         ((SlottedActivity) activity).onBackground();
                     }
@@ -201,6 +216,10 @@ public class ActiveSlot {
                 } else {
                     activity.onStop();
                     activityCache.removeStopped(activity);
+                    activityCache.recycle(place, activity);
+                }
+                if (!backgrounded && activity instanceof SlottedActivity) {
+                    ((SlottedActivity) activity).releasePooledViews(slot);
                 }
                 activity = null;
                 activityStarting = false;
@@ -208,32 +227,26 @@ public class ActiveSlot {
             if (children != null) {
                 for (ActiveSlot child : children) {
                     child.stopActivities();
+                    slottedController.removeActiveSlot(child);
                 }
                 children.clear();
             }
 
             if (!backgrounded && place != null) {
-                stopBackgroundActivities(place, activityCache);
+                slottedController.stopBackgroundActivities(place);
             }
 
             place = null;
             currentProtectedDisplay = null;
         } finally {
-            if (!backgrounded) {
+            if (backgrounded) {
+                resettableEventBus = new ResettableEventBus(eventBus);
+            } else {
                 resettableEventBus.removeHandlers();
             }
         }
     }
 
-    private void stopBackgroundActivities(SlottedPlace place, ActivityCache activityCache) {
-        List<Class<? extends SlottedPlace>> placesOfActivitiesToCache = historyMapper.getPlacesOfActivitiesToCache(place);
-        List<Entry> backgroundedActivities = activityCache.getBackgroundedActivities(placesOfActivitiesToCache);
-        for (Entry entry: backgroundedActivities) {
-            stopBackgroundActivities(entry.place, activityCache);
-            entry.activity.onStop();
-        }
-    }
-
     /**
      * Constructs the new hierarchy determining if the current Activity will change.  If it will change onStop() is called,
      * and the new Activity is constructed and start() called.  If it doesn't change, onRefresh() is called.
@@ -245,9 +258,19 @@ public class ActiveSlot {
     public void constructStopStart(PlaceParameters parameters,
             Iterable<SlottedPlace> newPlaces, boolean reloadAll)
     {
-        if (newPlace == null) {
-            newPlace = getPlace(newPlaces);
-        }
+        constructStopStart(parameters, new NavigationDiff(this, newPlaces, reloadAll), reloadAll);
+    }
+
+    /**
+     * Same as {@link #constructStopStart(PlaceParameters, Iterable, boolean)}, but uses a precomputed NavigationDiff
+     * to look up the Place for each Slot.
+     *
+     * @param parameters The global parameters object that should be populated during construction.
+     * @param diff The difference between the displayed hierarchy and the new Places.
+     * @param reloadAll Will force all the Activities to be stopped and started.
+     */
+    public void constructStopStart(PlaceParameters parameters, NavigationDiff diff, boolean reloadAll) {
+        newPlace = getPlace(diff);
         historyMapper.extractParameters(newPlace, parameters);
         newPlace.setPlaceParameters(parameters);
 
@@ -274,32 +297,27 @@ public class ActiveSlot {
                 }
             } else {
                 activityCache.get(place);
+                // Unchanged Slots may have been skipped by maybeGoTo(), so keep their backgrounded Activities.
+                activityCache.markForBackground(historyMapper.getPlacesOfActivitiesToCache(place));
                 refreshActivity(parameters);
             }
         }
 
         for (ActiveSlot child : children) {
-            child.constructStopStart(parameters, newPlaces, reloadAll);
+            child.constructStopStart(parameters, diff, reloadAll);
         }
     }
 
     /**
      * Gets the appropriate Place for this Slot.
      *
-     * @param newPlaces The list of new Places that will be displayed.
+     * @param diff The difference between the displayed hierarchy and the new Places.
      * @return The Place that should be displayed for this Slot
      */
-    private SlottedPlace getPlace(Iterable<SlottedPlace> newPlaces) {
-        for (SlottedPlace place : newPlaces) {
-            boolean isRootPlace =
-                    place.getParentSlot() == null || place.getParentSlot() instanceof RootSlotImpl;
-            boolean isRoot = slot.getOwnerPlace() == null;
-            if (isRootPlace && isRoot) {
-                return place;
-            }
-            if (slot.equals(place.getParentSlot())) {
-                return place;
-            }
+    private SlottedPlace getPlace(NavigationDiff diff) {
+        SlottedPlace requestedPlace = diff.getPlace(this);
+        if (requestedPlace != null) {
+            return requestedPlace;
         }
         if (place != null) {
             return place;
@@ -307,6 +325,57 @@ public class ActiveSlot {
         return slot.getDefaultPlace();
     }
 
+    /**
+     * Receives the Activity requested by {@link #getStartActivity(PlaceParameters)}.  The callback is stamped with
+     * the navigation generation it was created in, so results for a dropped navigation are ignored.
+     */
+    private class ActivityCallback extends AbortableCallback<Activity, Throwable> {
+        private final PlaceParameters parameters;
+        private final boolean fromMapper;
+        private final int generation;
+        private final double requestTime;
+
+        ActivityCallback(PlaceParameters parameters, boolean fromMapper) {
+            this.parameters = parameters;
+            this.fromMapper = fromMapper;
+            this.generation = slottedController.getNavigationGeneration();
+            this.requestTime = NavigationTrace.now();
+        }
+
+        @Override public void onSuccess(Activity result) {
+            if (generation != slottedController.getNavigationGeneration() || !finish()) {
+                SlottedController.log.info("Ignoring Activity loaded for a dropped navigation: " + result);
+                return;
+            }
+            NavigationTrace trace = slottedController.getNavigationTrace();
+            if (trace != null) {
+                trace.addPhase(NavigationTrace.ASYNC_WAIT, place.getClass().getName(), requestTime);
+            }
+            try {
+                if (result != null) {
+                    startActivity(result, parameters);
+                } else if (fromMapper) {
+                    throw new IllegalStateException(historyMapper.getPlaceName(place.getClass()) + "'s getActivity() " +
+                            "returned null, and LegacyActivityMapper also return null.");
+                } else {
+                    getStartFromMapper(parameters);
+                }
+                slottedController.removeAsyncActivity(this);
+                slottedController.asyncGoToCleanup(true);
+            } catch (Exception e) {
+                slottedController.handleGoToException(e);
+            }
+        }
+
+        @Override public void onFailure(Throwable reason) {
+            if (generation != slottedController.getNavigationGeneration() || !finish()) {
+                SlottedController.log.log(Level.INFO, "Ignoring Activity load failure for a dropped navigation", reason);
+                return;
+            }
+            slottedController.handleGoToException(reason);
+        }
+    }
+
     /**
      * Gets and starts the Activity for the Place specified in class variable, and recursive calls this for its children.
      * Getting the Activity is done by checking the Place, then checking the LegacyActivityMapper.  It also creates a new
@@ -315,32 +384,21 @@ public class ActiveSlot {
      * @param parameters The global parameters for the hierarchy
      */
     private void getStartActivity(final PlaceParameters parameters) {
-        Callback<Activity, Throwable> activityCallback = new Callback<Activity, Throwable>() {
-            @Override public void onSuccess(Activity result) {
-                try {
-                    if (slottedController.asyncActivities.contains(this)) {
-                        if (result != null) {
-                            startActivity(result, parameters);
-                        } else {
-                            getStartFromMapper(parameters);
-                        }
-                        slottedController.asyncActivities.remove(this);
-                        slottedController.asyncGoToCleanup(true);
-                    } else {
-                        throw new IllegalStateException("Invalid load");
-                    }
-                } catch (Exception e) {
-                    slottedController.handleGoToException(e);
-                }
-
-            }
+        Activity prefetched = slottedController.takePrefetchedActivity(place);
+        if (prefetched != null) {
+            startActivity(prefetched, parameters);
+            return;
+        }
 
-            @Override public void onFailure(Throwable reason) {
-                slottedController.handleGoToException(reason);
-            }
-        };
+        Activity recycled = slottedController.getActivityCache().takeRecycled(place);
+        if (recycled != null) {
+            ((SlottedActivity) recycled).recycle();
+            startActivity(recycled, parameters);
+            return;
+        }
 
-        slottedController.asyncActivities.add(activityCallback);
+        ActivityCallback activityCallback = new ActivityCallback(parameters, false);
+        slottedController.addAsyncActivity(activityCallback);
         Class codeSplitClass = historyMapper.getCodeSplitMapper(place);
         if (codeSplitClass != null) {
             CodeSplitMapper codeSplitMapper = slottedController.getCodeSplitMapper(codeSplitClass);
@@ -360,6 +418,12 @@ public class ActiveSlot {
             throw new IllegalStateException(historyMapper.getPlaceName(place.getClass()) + "'s getActivity() returned null, " +
                     "and LegacyActivityMapper wasn't set.");
         }
+        if (mapper instanceof AsyncActivityMapper) {
+            ActivityCallback activityCallback = new ActivityCallback(parameters, true);
+            slottedController.addAsyncActivity(activityCallback);
+            ((AsyncActivityMapper) mapper).getActivityAsync(place, activityCallback);
+            return;
+        }
         activity = mapper.getActivity(place);
         if (activity == null) {
             throw new IllegalStateException(historyMapper.getPlaceName(place.getClass()) + "'s getActivity() returned null, " +
@@ -385,8 +449,13 @@ public class ActiveSlot {
                 new com.google.gwt.event.shared.ResettableEventBus(resettableEventBus);
         activityStarting = true;
         currentProtectedDisplay = new ProtectedDisplay(activity, activityCache.isMarkedForBackground(place));
+        NavigationTrace trace = slottedController.getNavigationTrace();
+        double startTime = NavigationTrace.now();
         try {
             activity.start(currentProtectedDisplay, legacyBus);
+            if (trace != null) {
+                trace.addPhase(NavigationTrace.ACTIVITY_START, activity.getClass().getName(), startTime);
+            }
         } catch (Exception e) {
             String token = historyMapper.createToken(place);
             try {
@@ -426,15 +495,24 @@ public class ActiveSlot {
         if (activity instanceof SlottedActivity) {
             currentProtectedDisplay = new ProtectedDisplay(activity, true);
 
-            //todo is this needed
+            // The backgrounded Activity's handlers are on the EventBus it was started with.
             ActivityCache activityCache = slottedController.getActivityCache();
+            ResettableEventBus backgroundEventBus = activityCache.getBackgroundEventBus(place);
+            if (backgroundEventBus != null) {
+                resettableEventBus.removeHandlers();
+                resettableEventBus = backgroundEventBus;
+            }
+
+            //todo is this needed
             activityCache.add(place, activity);
 
             SlottedActivity slottedActivity = (SlottedActivity) activity;
             boolean success = slot.foreground(activity);
+            activityCache.recordForeground(success);
             if (success) {
                 slottedActivity.onRefresh();
             } else {
+                resettableEventBus.removeHandlers();
                 getStartActivity(parameters);
             }
         }
@@ -466,6 +544,7 @@ public class ActiveSlot {
             for (Slot child: childSlots) {
                 ActiveSlot activeSlot =  new ActiveSlot(this, child, resettableEventBus, slottedController);
                 children.add(activeSlot);
+                slottedController.addActiveSlot(activeSlot);
             }
             assert childSlots.length == children.size() : "Error creating children ActiveSlots";
         }
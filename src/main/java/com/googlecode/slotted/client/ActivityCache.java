@@ -1,69 +1,145 @@
 package com.googlecode.slotted.client;
 
 import com.google.gwt.activity.shared.Activity;
+import com.google.web.bindery.event.shared.ResettableEventBus;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
+/**
+ * Holds the Activities of the current navigation, and the backgrounded Activities that are kept for
+ * {@link CacheActivities}.  Entries are indexed by Place, Place class, Activity class and Activity instance, and
+ * are stamped with the navigation generation that last used them, and kept in a set of used or unused entries,
+ * so {@link #clearUnused()} only has to visit the entries that weren't used.  The backgrounded Places are kept in
+ * a LinkedHashSet in least recently backgrounded order, so they can be moved and removed without a scan.
+ * the entries that weren't used.
+ */
 public class ActivityCache {
     private HashMap<SlottedPlace, Entry> activityCache = new HashMap<SlottedPlace, Entry>();
-    private HashMap<SlottedPlace, Entry> usedCache = new HashMap<SlottedPlace, Entry>();
-    private HashSet<Class<? extends SlottedPlace>> backgroundMarks = new HashSet<Class<? extends SlottedPlace>>();
-    private LinkedList<SlottedPlace> backgroundedActivities = new LinkedList<SlottedPlace>();
+    private HashMap<Class, ArrayList<Entry>> placeClassIndex = new HashMap<Class, ArrayList<Entry>>();
+    private HashMap<Class, ArrayList<Entry>> activityClassIndex = new HashMap<Class, ArrayList<Entry>>();
+    private IdentityHashMap<Activity, ArrayList<Entry>> activityIndex = new IdentityHashMap<Activity, ArrayList<Entry>>();
+    private HashMap<Class<? extends SlottedPlace>, Integer> backgroundMarks = new HashMap<Class<? extends SlottedPlace>, Integer>();
+    private LinkedHashSet<SlottedPlace> backgroundedActivities = new LinkedHashSet<SlottedPlace>();
+    private HashSet<Entry> usedEntries = new HashSet<Entry>();
+    private HashSet<Entry> unusedEntries = new HashSet<Entry>();
+    private int generation;
+    private HashMap<Class, ArrayList<Activity>> activityPool = new HashMap<Class, ArrayList<Activity>>();
+    private int poolSize = 2;
+    private int hits;
+    private int misses;
+    private int foregroundSuccesses;
+    private int foregroundFallbacks;
+    private int evictions;
 
     public void add(SlottedPlace place, Activity activity) {
+        Entry existing = activityCache.get(place);
+        if (existing != null) {
+            removeEntry(existing);
+        }
+
         Entry entry = new Entry(place, activity);
+        entry.generation = generation;
+        usedEntries.add(entry);
         activityCache.put(place, entry);
-        usedCache.put(place, entry);
+        addToIndex(placeClassIndex, place.getClass(), entry);
+        addToIndex(activityClassIndex, activity.getClass(), entry);
+        addToIndex(activityIndex, activity, entry);
         backgroundedActivities.remove(place);
     }
 
+    /**
+     * Removes the entries that weren't used during the current navigation, and clears the background marks by
+     * starting a new generation.  All the remaining entries become unused until the next navigation uses them.
+     */
     public void clearUnused() {
-        activityCache = usedCache;
-        usedCache = new HashMap<SlottedPlace, Entry>();
-        backgroundMarks = new HashSet<Class<? extends SlottedPlace>>();
+        for (Entry entry: unusedEntries) {
+            if (activityCache.get(entry.place) == entry) {
+                activityCache.remove(entry.place);
+                if (entry.slot != null) {
+                    backgroundedActivities.remove(entry.place);
+                }
+            }
+            removeFromIndexes(entry);
+        }
+        unusedEntries = usedEntries;
+        usedEntries = new HashSet<Entry>();
+        generation++;
+    }
+
+    /**
+     * Stamps the entry with the current generation, so it is kept by the next {@link #clearUnused()}.
+     */
+    private void use(Entry entry) {
+        if (entry.generation != generation) {
+            entry.generation = generation;
+            unusedEntries.remove(entry);
+            usedEntries.add(entry);
+        }
     }
 
     public void removeStopped(Activity activity) {
-        Iterator<Entry> valuesIt = activityCache.values().iterator();
-        while (valuesIt.hasNext()) {
-            Entry entry = valuesIt.next();
-            if (activity == entry.activity) {
-                valuesIt.remove();
+        ArrayList<Entry> entries = activityIndex.remove(activity);
+        if (entries != null) {
+            for (Entry entry: entries) {
+                removeEntry(entry);
             }
         }
     }
 
     public Activity getByActivity(Class<? extends Activity> activityClass) {
-        for (Entry entry: activityCache.values()) {
-            if (activityClass.equals(entry.activity.getClass())) {
-                return entry.activity;
-            }
+        ArrayList<Entry> entries = activityClassIndex.get(activityClass);
+        if (entries != null && !entries.isEmpty()) {
+            return entries.get(0).activity;
         }
         return null;
     }
 
     public List<Activity> get(Class<? extends SlottedPlace> placeClass) {
-        LinkedList<Activity> activities = new LinkedList<Activity>();
-        for (Entry entry: activityCache.values()) {
-            if (entry.place.getClass().equals(placeClass)) {
-                activities.add(entry.activity);
-            }
+        ArrayList<Entry> entries = placeClassIndex.get(placeClass);
+        if (entries == null) {
+            return Collections.emptyList();
         }
 
+        ArrayList<Activity> activities = new ArrayList<Activity>(entries.size());
+        for (Entry entry: entries) {
+            activities.add(entry.activity);
+        }
         return activities;
     }
 
+    /**
+     * Gets the first Activity for the Place class without creating a list.
+     *
+     * @return The Activity, or null if none is cached for the Place class.
+     */
+    public Activity getFirst(Class<? extends SlottedPlace> placeClass) {
+        ArrayList<Entry> entries = placeClassIndex.get(placeClass);
+        if (entries != null && !entries.isEmpty()) {
+            return entries.get(0).activity;
+        }
+        return null;
+    }
+
     public Activity get(SlottedPlace place) {
         Entry entry = activityCache.get(place);
         if (entry != null && entry.place.equals(place)) {
-            usedCache.put(place, entry);
+            use(entry);
+            hits++;
             return entry.activity;
         }
 
+        misses++;
         return null;
     }
 
@@ -76,21 +152,99 @@ public class ActivityCache {
     }
 
     public void markForBackground(Class<? extends SlottedPlace> placeClass) {
-        backgroundMarks.add(placeClass);
-        for (Entry entry: activityCache.values()) {
-            if (entry.place.getClass().equals(placeClass)) {
-                usedCache.put(entry.place, entry);
+        backgroundMarks.put(placeClass, generation);
+        ArrayList<Entry> entries = placeClassIndex.get(placeClass);
+        if (entries != null) {
+            for (Entry entry: entries) {
+                use(entry);
             }
         }
     }
 
     public boolean isMarkedForBackground(SlottedPlace place) {
-        Class<? extends SlottedPlace> placeClass = place.getClass();
-        return backgroundMarks.contains(placeClass);
+        Integer markGeneration = backgroundMarks.get(place.getClass());
+        return markGeneration != null && markGeneration == generation;
+    }
+
+    /**
+     * Records that the Activity for the Place was hidden instead of stopped.
+     *
+     * @param place The Place of the backgrounded Activity.
+     * @param slot The Slot that holds the hidden widget.
+     */
+    public void setBackgrounded(SlottedPlace place, Slot slot) {
+        setBackgrounded(place, slot, null);
     }
 
-    public void setBackgrounded(SlottedPlace place) {
+    /**
+     * Same as {@link #setBackgrounded(SlottedPlace, Slot)}, but also keeps the EventBus the Activity registered
+     * its handlers on, so they can be removed when the Activity is stopped.
+     *
+     * @param eventBus The Slot's EventBus that was passed to the Activity.
+     */
+    public void setBackgrounded(SlottedPlace place, Slot slot, ResettableEventBus eventBus) {
+        backgroundedActivities.remove(place);
         backgroundedActivities.add(place);
+        Entry entry = activityCache.get(place);
+        if (entry != null) {
+            entry.slot = slot;
+            entry.eventBus = eventBus;
+            entry.lastUsed = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Gets the EventBus that was kept for the backgrounded Activity of the Place.
+     *
+     * @return The EventBus, or null if the Place doesn't have a backgrounded Activity.
+     */
+    public ResettableEventBus getBackgroundEventBus(SlottedPlace place) {
+        Entry entry = activityCache.get(place);
+        return entry != null ? entry.eventBus : null;
+    }
+
+    /**
+     * Removes a backgrounded Activity that was stopped.
+     */
+    public void removeBackgrounded(Entry entry) {
+        removeEntry(entry);
+        backgroundedActivities.remove(entry.place);
+    }
+
+    /**
+     * Asks the Slot's policy, or the default policy if the Slot doesn't have one, which backgrounded Activities
+     * should be evicted.  The evicted entries are removed from the cache.
+     *
+     * @param defaultPolicy The policy for Slots without their own policy, which may be null.
+     * @param now The current time in milliseconds.
+     * @return The evicted entries, which still need to be stopped.
+     */
+    public List<Entry> evictBackgrounded(BackgroundEvictionPolicy defaultPolicy, double now) {
+        LinkedHashMap<Slot, ArrayList<Entry>> slotEntries = new LinkedHashMap<Slot, ArrayList<Entry>>();
+        for (SlottedPlace place: backgroundedActivities) {
+            Entry entry = activityCache.get(place);
+            if (entry != null && entry.slot != null) {
+                addToIndex(slotEntries, entry.slot, entry);
+            }
+        }
+
+        ArrayList<Entry> evicted = new ArrayList<Entry>();
+        for (Map.Entry<Slot, ArrayList<Entry>> mapEntry: slotEntries.entrySet()) {
+            BackgroundEvictionPolicy policy = mapEntry.getKey().getBackgroundEvictionPolicy();
+            if (policy == null) {
+                policy = defaultPolicy;
+            }
+            if (policy != null) {
+                evicted.addAll(policy.selectEvictions(mapEntry.getValue(), now));
+            }
+        }
+        for (Entry entry: evicted) {
+            removeEntry(entry);
+            backgroundedActivities.remove(entry.place);
+        }
+        evictions += evicted.size();
+
+        return evicted;
     }
 
     public List<Entry> getBackgroundedActivities(List<Class<? extends SlottedPlace>> includeList) {
@@ -107,13 +261,259 @@ public class ActivityCache {
         return activities;
     }
 
+    /**
+     * Evicts backgrounded Activities until the total DOM weight of their hidden widgets is within the budget.
+     * Activities are evicted in order of weight multiplied by the time since they were backgrounded, so the
+     * heaviest and least recently used views go first.
+     *
+     * @param budget The maximum total element count of the hidden widgets.
+     * @param now The current time in milliseconds.
+     * @return The evicted entries, which still need to be stopped.
+     */
+    public List<Entry> evictOverBudget(int budget, final double now) {
+        ArrayList<Entry> entries = new ArrayList<Entry>();
+        int totalWeight = 0;
+        for (SlottedPlace place: backgroundedActivities) {
+            Entry entry = activityCache.get(place);
+            if (entry != null && entry.slot != null) {
+                entries.add(entry);
+                totalWeight += entry.getWeight();
+            }
+        }
+        if (totalWeight <= budget) {
+            return Collections.emptyList();
+        }
+
+        Collections.sort(entries, new Comparator<Entry>() {
+            @Override public int compare(Entry e1, Entry e2) {
+                return Double.compare(e2.getEvictionScore(now), e1.getEvictionScore(now));
+            }
+        });
+        ArrayList<Entry> evicted = new ArrayList<Entry>();
+        for (Entry entry: entries) {
+            if (totalWeight <= budget) {
+                break;
+            }
+            totalWeight -= entry.getWeight();
+            evictions++;
+            evicted.add(entry);
+            removeEntry(entry);
+            backgroundedActivities.remove(entry.place);
+        }
+
+        return evicted;
+    }
+
+    /**
+     * Gets the total estimated DOM weight of the backgrounded Activities' hidden widgets.
+     */
+    public int getBackgroundWeight() {
+        int totalWeight = 0;
+        for (SlottedPlace place: backgroundedActivities) {
+            Entry entry = activityCache.get(place);
+            if (entry != null && entry.slot != null) {
+                totalWeight += entry.getWeight();
+            }
+        }
+        return totalWeight;
+    }
+
+    /**
+     * Adds a stopped Activity to the pool if it is a recyclable SlottedActivity, its Place declares the Activity
+     * class with {@link SlottedPlace#getActivityClass()}, and the pool for its class isn't full.  The class isn't
+     * inferred for other Places, because their getActivity() or ActivityMapper may choose the Activity class or
+     * its constructor arguments from the Place's state.
+     *
+     * @param place The Place the Activity was displaying.
+     * @param activity The Activity that had onStop() called.
+     */
+    public void recycle(SlottedPlace place, Activity activity) {
+        if (poolSize > 0 && activity instanceof SlottedActivity && ((SlottedActivity) activity).isRecyclable()
+                && activity.getClass().equals(place.getActivityClass()))
+        {
+            ArrayList<Activity> pool = activityPool.get(activity.getClass());
+            if (pool == null) {
+                pool = new ArrayList<Activity>(poolSize);
+                activityPool.put(activity.getClass(), pool);
+            }
+            if (pool.size() < poolSize) {
+                pool.add(activity);
+            }
+        }
+    }
+
+    /**
+     * Takes a stopped Activity from the pool for the Place.
+     *
+     * @param place The Place that needs an Activity.
+     * @return The recycled Activity, or null if the pool is empty or the Place doesn't declare its Activity class.
+     */
+    public Activity takeRecycled(SlottedPlace place) {
+        ArrayList<Activity> pool = getPool(place);
+        if (pool != null && !pool.isEmpty()) {
+            return pool.remove(pool.size() - 1);
+        }
+        return null;
+    }
+
+    /**
+     * Returns true if a navigation to the Place would use a cached or recycled Activity.  Unlike
+     * {@link #get(SlottedPlace)}, this doesn't count a hit or miss, or keep the entry for the navigation.
+     */
+    public boolean hasActivity(SlottedPlace place) {
+        Entry entry = activityCache.get(place);
+        if (entry != null && entry.place.equals(place)) {
+            return true;
+        }
+        ArrayList<Activity> pool = getPool(place);
+        return pool != null && !pool.isEmpty();
+    }
+
+    private ArrayList<Activity> getPool(SlottedPlace place) {
+        Class activityClass = place.getActivityClass();
+        return activityClass != null ? activityPool.get(activityClass) : null;
+    }
+
+    /**
+     * Sets the number of stopped Activities kept per Activity class.  Defaults to 2.
+     *
+     * @param poolSize The pool size, or 0 to disable recycling.
+     */
+    public void setPoolSize(int poolSize) {
+        this.poolSize = poolSize;
+        for (ArrayList<Activity> pool: activityPool.values()) {
+            while (pool.size() > poolSize) {
+                pool.remove(pool.size() - 1);
+            }
+        }
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    /**
+     * Records if a backgrounded Activity was shown with its existing widget, or had to be started again.
+     */
+    public void recordForeground(boolean success) {
+        if (success) {
+            foregroundSuccesses++;
+        } else {
+            foregroundFallbacks++;
+        }
+    }
+
+    /**
+     * Creates a snapshot of the counters and the backgrounded Activities.
+     */
+    public ActivityCacheStatistics getStatistics() {
+        HashMap<Class<? extends SlottedPlace>, Integer> backgroundedCounts =
+                new HashMap<Class<? extends SlottedPlace>, Integer>();
+        HashSet<Slot> slots = new HashSet<Slot>();
+        int totalWeight = 0;
+        for (SlottedPlace place: backgroundedActivities) {
+            Entry entry = activityCache.get(place);
+            if (entry != null && entry.slot != null) {
+                Integer count = backgroundedCounts.get(place.getClass());
+                backgroundedCounts.put(place.getClass(), count == null ? 1 : count + 1);
+                slots.add(entry.slot);
+                totalWeight += entry.getWeight();
+            }
+        }
+        int hiddenWidgetCount = 0;
+        for (Slot slot: slots) {
+            hiddenWidgetCount += slot.getHiddenWidgetCount();
+        }
+
+        return new ActivityCacheStatistics(hits, misses, foregroundSuccesses, foregroundFallbacks, evictions,
+                hiddenWidgetCount, totalWeight, backgroundedCounts);
+    }
+
+    public void resetStatistics() {
+        hits = 0;
+        misses = 0;
+        foregroundSuccesses = 0;
+        foregroundFallbacks = 0;
+        evictions = 0;
+    }
+
+    private void removeEntry(Entry entry) {
+        if (activityCache.get(entry.place) == entry) {
+            activityCache.remove(entry.place);
+        }
+        usedEntries.remove(entry);
+        unusedEntries.remove(entry);
+        removeFromIndexes(entry);
+    }
+
+    private void removeFromIndexes(Entry entry) {
+        removeFromIndex(placeClassIndex, entry.place.getClass(), entry);
+        removeFromIndex(activityClassIndex, entry.activity.getClass(), entry);
+        removeFromIndex(activityIndex, entry.activity, entry);
+    }
+
+    private <K> void addToIndex(Map<K, ArrayList<Entry>> index, K key, Entry entry) {
+        ArrayList<Entry> entries = index.get(key);
+        if (entries == null) {
+            entries = new ArrayList<Entry>(2);
+            index.put(key, entries);
+        }
+        entries.add(entry);
+    }
+
+    private <K> void removeFromIndex(Map<K, ArrayList<Entry>> index, K key, Entry entry) {
+        ArrayList<Entry> entries = index.get(key);
+        if (entries != null) {
+            entries.remove(entry);
+            if (entries.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
     public class Entry {
         public SlottedPlace place;
         public Activity activity;
+        private int generation;
+        private Slot slot;
+        private ResettableEventBus eventBus;
+        private double lastUsed;
 
         private Entry(SlottedPlace place, Activity activity) {
             this.place = place;
             this.activity = activity;
         }
+
+        /**
+         * Gets the Slot that holds the widget of a backgrounded Activity, or null if it was never backgrounded.
+         */
+        public Slot getSlot() {
+            return slot;
+        }
+
+        /**
+         * Gets the EventBus the backgrounded Activity registered its handlers on, or null if it wasn't kept.
+         */
+        public ResettableEventBus getEventBus() {
+            return eventBus;
+        }
+
+        /**
+         * Gets the time in milliseconds the Activity was backgrounded.
+         */
+        public double getLastUsed() {
+            return lastUsed;
+        }
+
+        /**
+         * Gets the element count of the backgrounded Activity's widget when it was hidden.
+         */
+        public int getWeight() {
+            return slot != null ? slot.getBackgroundWeight(activity) : 0;
+        }
+
+        private double getEvictionScore(double now) {
+            return (double) getWeight() * (now - lastUsed + 1);
+        }
     }
 }
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2012 Jeffrey Kleiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.googlecode.slotted.client;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A snapshot of the {@link ActivityCache} counters and the backgrounded Activities, which can be used to decide
+ * where {@link CacheActivities} is worth using.
+ *
+ * @see SlottedController#getActivityCacheStatistics()
+ * @see ActivityCacheStatisticsEvent
+ */
+public class ActivityCacheStatistics {
+    private final int hits;
+    private final int misses;
+    private final int foregroundSuccesses;
+    private final int foregroundFallbacks;
+    private final int evictions;
+    private final int hiddenWidgetCount;
+    private final int backgroundWeight;
+    private final Map<Class<? extends SlottedPlace>, Integer> backgroundedCounts;
+
+    protected ActivityCacheStatistics(int hits, int misses, int foregroundSuccesses, int foregroundFallbacks,
+            int evictions, int hiddenWidgetCount, int backgroundWeight,
+            Map<Class<? extends SlottedPlace>, Integer> backgroundedCounts)
+    {
+        this.hits = hits;
+        this.misses = misses;
+        this.foregroundSuccesses = foregroundSuccesses;
+        this.foregroundFallbacks = foregroundFallbacks;
+        this.evictions = evictions;
+        this.hiddenWidgetCount = hiddenWidgetCount;
+        this.backgroundWeight = backgroundWeight;
+        this.backgroundedCounts = Collections.unmodifiableMap(backgroundedCounts);
+    }
+
+    /**
+     * The number of times a Place's Activity was found in the cache.
+     */
+    public int getHits() {
+        return hits;
+    }
+
+    /**
+     * The number of times a Place's Activity wasn't in the cache.
+     */
+    public int getMisses() {
+        return misses;
+    }
+
+    /**
+     * The number of backgrounded Activities that were shown again with their existing widget.
+     */
+    public int getForegroundSuccesses() {
+        return foregroundSuccesses;
+    }
+
+    /**
+     * The number of backgrounded Activities that had to be started again, because their widget was gone.
+     */
+    public int getForegroundFallbacks() {
+        return foregroundFallbacks;
+    }
+
+    /**
+     * The number of backgrounded Activities stopped by the eviction policies or DOM budget.
+     */
+    public int getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * The number of hidden widgets in the Slots of the backgrounded Activities.
+     */
+    public int getHiddenWidgetCount() {
+        return hiddenWidgetCount;
+    }
+
+    /**
+     * The total element count of the hidden widgets.
+     */
+    public int getBackgroundWeight() {
+        return backgroundWeight;
+    }
+
+    /**
+     * The number of backgrounded Activities for each Place class.
+     */
+    public Map<Class<? extends SlottedPlace>, Integer> getBackgroundedCounts() {
+        return backgroundedCounts;
+    }
+
+    @Override public String toString() {
+        return "hits=" + hits + " misses=" + misses + " foregroundSuccesses=" + foregroundSuccesses +
+                " foregroundFallbacks=" + foregroundFallbacks + " evictions=" + evictions +
+                " hiddenWidgets=" + hiddenWidgetCount + " backgroundWeight=" + backgroundWeight +
+                " backgrounded=" + backgroundedCounts;
+    }
+}
@@ -0,0 +1,67 @@
+package com.googlecode.slotted.client;
+
+import com.google.gwt.event.shared.EventHandler;
+import com.google.gwt.event.shared.GwtEvent;
+import com.google.gwt.event.shared.HandlerManager;
+
+public class ActivityCacheStatisticsEvent extends GwtEvent<ActivityCacheStatisticsEvent.Handler> {
+    public static final Type<Handler> Type = new Type<Handler>();
+
+    /**
+     * The Handler for the ActivityCacheStatisticsEvent.
+     */
+    public interface Handler extends EventHandler {
+        /**
+         * Called periodically when {@link SlottedController#setActivityCacheStatisticsInterval(int)} is set.
+         *
+         * @param activityCacheStatisticsEvent Event containing the statistics snapshot
+         */
+        void statisticsPublished(ActivityCacheStatisticsEvent activityCacheStatisticsEvent);
+    }
+
+    private ActivityCacheStatistics statistics;
+    private SlottedController source;
+
+    /**
+     * Creates a new event.
+     *
+     * @param statistics The snapshot of the cache statistics.
+     * @param source The SlottedController that owns the cache
+     */
+    protected ActivityCacheStatisticsEvent(ActivityCacheStatistics statistics, SlottedController source) {
+        this.statistics = statistics;
+        this.source = source;
+    }
+
+    /**
+     * Gets the source SlottedController that owns the cache.
+     */
+    @Override
+    public SlottedController getSource() {
+        return source;
+    }
+
+    /**
+     * Gets the snapshot of the cache statistics.
+     */
+    public ActivityCacheStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * @return The type used to register handlers.
+     */
+    public Type<Handler> getAssociatedType() {
+        return Type;
+    }
+
+    /**
+     * Should only be called by {@link HandlerManager}. In other words, do not use
+     * or call.
+     *
+     * @param handler handler
+     */
+    protected void dispatch(Handler handler) {
+        handler.statisticsPublished(this);
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2012 Jeffrey Kleiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.googlecode.slotted.client;
+
+import java.util.List;
+
+import com.googlecode.slotted.client.ActivityCache.Entry;
+
+/**
+ * Decides which backgrounded Activities of a Slot should be stopped, so the Places marked with
+ * {@link CacheActivities} don't keep every hidden view for the whole session.  The policy is checked after each
+ * navigation, and the evicted Activities have onStop() called and their widgets removed from the Slot.
+ *
+ * @see SlottedController#setBackgroundEvictionPolicy(BackgroundEvictionPolicy)
+ * @see Slot#setBackgroundEvictionPolicy(BackgroundEvictionPolicy)
+ * @see LruEvictionPolicy
+ */
+public interface BackgroundEvictionPolicy {
+    /**
+     * Selects the backgrounded Activities that should be evicted.
+     *
+     * @param backgrounded The backgrounded Activities of a Slot, least recently used first.
+     * @param now The current time in milliseconds.
+     * @return The entries to evict, which may be empty.
+     */
+    List<Entry> selectEvictions(List<Entry> backgrounded, double now);
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2012 Jeffrey Kleiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.googlecode.slotted.client;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.logging.Level;
+
+import com.google.gwt.activity.shared.Activity;
+import com.google.gwt.core.client.Callback;
+import com.google.gwt.user.client.Timer;
+
+/**
+ * Loads the registered {@link CodeSplitMapper} fragments in the background, after the first Places
+ * are displayed.  Fragments are loaded one at a time, in the priority order followed by the
+ * registration order, and loading waits while a navigation is being processed.
+ *
+ * @see SlottedController#setPreloadCodeSplits(boolean)
+ */
+public class CodeSplitPreloader {
+    private SlottedController slottedController;
+    private ArrayList<Class<? extends CodeSplitMapper>> priorityOrder = new ArrayList<Class<? extends CodeSplitMapper>>();
+    private HashSet<CodeSplitMapper> failedMappers = new HashSet<CodeSplitMapper>();
+    private int idleDelay = 1000;
+    private boolean enabled;
+    private boolean loading;
+    private int loadedCount;
+    private Timer timer = new Timer() {
+        @Override public void run() {
+            loadNext();
+        }
+    };
+
+    protected CodeSplitPreloader(SlottedController slottedController) {
+        this.slottedController = slottedController;
+    }
+
+    /**
+     * Sets the order the fragments are loaded in.  Mappers not in the list are loaded afterwards.
+     *
+     * @param mapperClasses The mapperClasses used in {@link SlottedController#registerCodeSplitMapper(Class, CodeSplitMapper)}.
+     */
+    public void setPriorityOrder(List<Class<? extends CodeSplitMapper>> mapperClasses) {
+        priorityOrder = new ArrayList<Class<? extends CodeSplitMapper>>(mapperClasses);
+    }
+
+    public List<Class<? extends CodeSplitMapper>> getPriorityOrder() {
+        return priorityOrder;
+    }
+
+    /**
+     * Sets the number of milliseconds without navigation before the next fragment is loaded.  Defaults to 1000.
+     *
+     * @param idleDelay The delay in milliseconds.
+     */
+    public void setIdleDelay(int idleDelay) {
+        this.idleDelay = idleDelay;
+    }
+
+    public int getIdleDelay() {
+        return idleDelay;
+    }
+
+    /**
+     * Returns the number of fragments loaded by the preloader.
+     */
+    public int getLoadedCount() {
+        return loadedCount;
+    }
+
+    protected void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            timer.cancel();
+        }
+    }
+
+    protected boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Called when a navigation starts, so the next fragment isn't loaded during it.
+     */
+    protected void navigationStarted() {
+        timer.cancel();
+    }
+
+    /**
+     * Called after the NewPlacesEvent is fired, to schedule the next fragment.
+     */
+    protected void navigationFinished() {
+        schedule();
+    }
+
+    private void schedule() {
+        if (enabled && !loading) {
+            timer.schedule(idleDelay);
+        }
+    }
+
+    private void loadNext() {
+        if (!enabled || loading) {
+            return;
+        }
+        if (slottedController.isProcessingGoTo()) {
+            schedule();
+            return;
+        }
+
+        final CodeSplitMapper mapper = getNextMapper();
+        if (mapper != null) {
+            loading = true;
+            mapper.load(new Callback<Activity, Throwable>() {
+                @Override public void onSuccess(Activity result) {
+                    loading = false;
+                    loadedCount++;
+                    schedule();
+                }
+
+                @Override public void onFailure(Throwable reason) {
+                    loading = false;
+                    failedMappers.add(mapper);
+                    SlottedController.log.log(Level.INFO, "Preloading CodeSplitMapper failed", reason);
+                    schedule();
+                }
+            });
+        }
+    }
+
+    private CodeSplitMapper getNextMapper() {
+        for (Class<? extends CodeSplitMapper> mapperClass: priorityOrder) {
+            CodeSplitMapper mapper = slottedController.getCodeSplitMapper(mapperClass);
+            if (shouldLoad(mapper)) {
+                return mapper;
+            }
+        }
+        for (CodeSplitMapper mapper: slottedController.codeSplitMap.values()) {
+            if (shouldLoad(mapper)) {
+                return mapper;
+            }
+        }
+        return null;
+    }
+
+    private boolean shouldLoad(CodeSplitMapper mapper) {
+        return mapper != null && !mapper.isLoaded() && !failedMappers.contains(mapper);
+    }
+}
@@ -0,0 +1,23 @@
+package com.googlecode.slotted.client;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a {@link CodeSplitMapper} interface whose Places should be registered in the mapper's code split
+ * fragment instead of the initial download.  The tokenizers of the Places marked with {@link CodeSplit} for
+ * the mapper, and the code that creates the Places, are generated in a {@link PlaceRegistry} that is created
+ * when the fragment loads.
+ *
+ * A History token or goTo() that needs one of the Places loads the fragment first.  Tokens for the Places
+ * can't be created until the fragment is loaded, so links to them should be created after a navigation to
+ * the section, or after the fragment is loaded by {@link CodeSplitPreloader} or prefetch.
+ *
+ * This only works with an {@link AutoHistoryMapper}.
+ */
+@Target({ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface CodeSplitRegistry {
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright 2012 Jeffrey Kleiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.googlecode.slotted.client;
+
+import java.util.List;
+
+/**
+ * Packs the parts of a History token into a shorter string, used when
+ * {@link HistoryMapper#setCompactTokens(boolean)} is enabled.  The token starts with {@link #PREFIX}, which
+ * holds the format version, followed by a stream of varints written as URL safe characters with 5 bits each:
+ * the number of Places, then for each Place its {@link CompactTokenId} or name and its '&amp;' separated
+ * parameters, then the global parameter pairs.  Parameters that are decimal integers are packed as zigzag
+ * varints, and everything else is written as a length followed by its readable characters.  The type is kept in
+ * the low bit of the first varint, so a small number or a short string costs the same as the readable
+ * separator.  Decoding recreates the exact readable parameter strings, so tokenizers are unaware of the format.
+ */
+public class CompactTokenCodec {
+    /**
+     * Starts every compact token.  Place names can't start with '~', so readable tokens are never mistaken for
+     * compact tokens.  The digit after '~' is the format version.
+     */
+    public static final String PREFIX = "~2";
+
+    private static final String ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+    private static final int MORE = 32;
+
+    private CompactTokenCodec() {
+    }
+
+    /**
+     * Returns true if the token is in a compact format, including versions this codec can't decode.
+     */
+    public static boolean isCompact(String token) {
+        return token.startsWith("~");
+    }
+
+    /**
+     * Creates a compact token.
+     *
+     * @param placeIds The {@link CompactTokenId} of each Place, or -1 to write the Place's name.
+     * @param names The name of each Place.
+     * @param parameterTokens The parameter token of each Place, or "".
+     * @param parameterNames The global parameter names.
+     * @param parameterValues The global parameter values, in the same order as the names.
+     */
+    public static String encode(int[] placeIds, List<String> names, List<String> parameterTokens,
+            List<String> parameterNames, List<String> parameterValues)
+    {
+        Writer writer = new Writer();
+        writer.writeVarint(placeIds.length);
+        for (int i = 0; i < placeIds.length; i++) {
+            String parameterToken = parameterTokens.get(i);
+            int count = countParameters(parameterToken);
+            if (placeIds[i] >= 0) {
+                writer.writeVarint(count << 1 | 1);
+                writer.writeVarint(placeIds[i]);
+            } else {
+                writer.writeVarint(count << 1);
+                writer.writeString(names.get(i));
+            }
+            writeParameters(writer, parameterToken);
+        }
+        writer.writeVarint(parameterNames.size());
+        for (int i = 0; i < parameterNames.size(); i++) {
+            writer.writeString(parameterNames.get(i));
+            writer.writeValue(parameterValues.get(i));
+        }
+        return writer.toString();
+    }
+
+    /**
+     * Reads a compact token back into its parts.
+     *
+     * @param token A token starting with {@link #PREFIX}.
+     * @param placeIds Receives the {@link CompactTokenId} of each Place, or -1 if the Place has a name.
+     * @param names Receives the name of each Place, or null if the Place has an id.
+     * @param parameterTokens Receives the parameter token of each Place, or "".
+     * @param parameterNames Receives the global parameter names.
+     * @param parameterValues Receives the global parameter values.
+     * @throws IllegalStateException if the token is malformed or has an unsupported version.
+     */
+    public static void decode(String token, List<Integer> placeIds, List<String> names, List<String> parameterTokens,
+            List<String> parameterNames, List<String> parameterValues)
+    {
+        if (!token.startsWith(PREFIX)) {
+            throw new IllegalStateException("Unsupported compact token version:" + token);
+        }
+        Reader reader = new Reader(token, PREFIX.length());
+        int placeCount = reader.readVarint();
+        for (int i = 0; i < placeCount; i++) {
+            int head = reader.readVarint();
+            if ((head & 1) != 0) {
+                placeIds.add(reader.readVarint());
+                names.add(null);
+            } else {
+                placeIds.add(-1);
+                names.add(reader.readString());
+            }
+            parameterTokens.add(readParameters(reader, head >>> 1));
+        }
+        int parameterCount = reader.readVarint();
+        for (int i = 0; i < parameterCount; i++) {
+            parameterNames.add(reader.readString());
+            parameterValues.add(reader.readValue());
+        }
+        if (!reader.isDone()) {
+            throw new IllegalStateException("Compact token has extra characters:" + token);
+        }
+    }
+
+    private static int countParameters(String parameterToken) {
+        if (parameterToken.isEmpty()) {
+            return 0;
+        }
+        int count = 1;
+        for (int i = 0; i < parameterToken.length(); i++) {
+            if (parameterToken.charAt(i) == '&') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static void writeParameters(Writer writer, String parameterToken) {
+        if (parameterToken.isEmpty()) {
+            return;
+        }
+        int start = 0;
+        for (int i = 0; i <= parameterToken.length(); i++) {
+            if (i == parameterToken.length() || parameterToken.charAt(i) == '&') {
+                writer.writeValue(parameterToken.substring(start, i));
+                start = i + 1;
+            }
+        }
+    }
+
+    private static String readParameters(Reader reader, int count) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                builder.append('&');
+            }
+            builder.append(reader.readValue());
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Returns true if the value is written exactly as Integer.toString() would, so it can be packed as a varint
+     * and recreated without changing the readable value.  Numbers are limited to 8 digits so the zigzag value
+     * and its type bit fit in an int.
+     */
+    private static boolean isPackedNumber(String value) {
+        int length = value.length();
+        int start = length > 0 && value.charAt(0) == '-' ? 1 : 0;
+        int digits = length - start;
+        if (digits < 1 || digits > 8 || (digits > 1 && value.charAt(start) == '0')
+                || (start == 1 && value.charAt(1) == '0'))
+        {
+            return false;
+        }
+        for (int i = start; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes varints as base64url characters, 5 bits per character with the 6th bit marking that more
+     * characters follow.
+     */
+    private static class Writer {
+        private StringBuilder builder = new StringBuilder(PREFIX);
+
+        void writeVarint(int value) {
+            while ((value & ~(MORE - 1)) != 0) {
+                builder.append(ALPHABET.charAt(MORE | (value & (MORE - 1))));
+                value >>>= 5;
+            }
+            builder.append(ALPHABET.charAt(value));
+        }
+
+        void writeString(String value) {
+            writeVarint(value.length());
+            builder.append(value);
+        }
+
+        /**
+         * Writes a number as its zigzag value with a 0 type bit, and anything else as its length with a 1 type
+         * bit followed by its characters.
+         */
+        void writeValue(String value) {
+            if (isPackedNumber(value)) {
+                int number = Integer.parseInt(value);
+                writeVarint(((number << 1) ^ (number >> 31)) << 1);
+            } else {
+                writeVarint(value.length() << 1 | 1);
+                builder.append(value);
+            }
+        }
+
+        @Override public String toString() {
+            return builder.toString();
+        }
+    }
+
+    /**
+     * Reads the varints and strings written by {@link Writer}.
+     */
+    private static class Reader {
+        private String token;
+        private int index;
+
+        Reader(String token, int index) {
+            this.token = token;
+            this.index = index;
+        }
+
+        boolean isDone() {
+            return index == token.length();
+        }
+
+        int readVarint() {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 5) {
+                if (index >= token.length()) {
+                    throw new IllegalStateException("Compact token is truncated:" + token);
+                }
+                int digit = ALPHABET.indexOf(token.charAt(index++));
+                if (digit < 0) {
+                    throw new IllegalStateException("Compact token has an invalid character:" + token);
+                }
+                value |= (digit & (MORE - 1)) << shift;
+                if ((digit & MORE) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalStateException("Compact token has an invalid number:" + token);
+        }
+
+        String readString() {
+            return readCharacters(readVarint());
+        }
+
+        String readValue() {
+            int head = readVarint();
+            if ((head & 1) != 0) {
+                return readCharacters(head >>> 1);
+            }
+            int zigzag = head >>> 1;
+            return String.valueOf((zigzag >>> 1) ^ -(zigzag & 1));
+        }
+
+        private String readCharacters(int length) {
+            if (length < 0 || index + length > token.length()) {
+                throw new IllegalStateException("Compact token is truncated:" + token);
+            }
+            String value = token.substring(index, index + length);
+            index += length;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.googlecode.slotted.client;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Defines the id that identifies the Place in compact tokens, instead of its name.  Ids are written into
+ * shared links, so an id must never be reused for a different Place.  Small ids make the shortest tokens.
+ * Places without an id are written with their name.  This is read by {@link AutoHistoryMapper}; other
+ * HistoryMappers use {@link HistoryMapper#registerCompactTokenId(Class, int)}.
+ *
+ * @see HistoryMapper#setCompactTokens(boolean)
+ */
+@Target({ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface CompactTokenId {
+    int value();
+}
@@ -0,0 +1,22 @@
+package com.googlecode.slotted.client;
+
+import com.google.gwt.place.shared.Place;
+
+/**
+ * Implemented by the AutoTokenizers created by the generator, which add fast paths that hand written
+ * {@link AutoTokenizer}s don't need to provide.  Slotted checks for this interface, and falls back to
+ * {@link #getToken(Object)} and {@link #getPlace(String)} for other tokenizers.
+ *
+ * @param <P> The Place type that will be created by the Tokenizer.
+ */
+public interface GeneratedAutoTokenizer<P extends Place> extends AutoTokenizer<P> {
+    /**
+     * Creates a new Place with the @TokenizerParameter and @GlobalParameter fields copied from the passed Place.
+     */
+    P copy(P place);
+
+    /**
+     * Writes the Place's tokenizer parameters directly into the History token being built.
+     */
+    void writeToken(TokenWriter writer, P place);
+}
@@ -15,14 +15,18 @@
  */
 package com.googlecode.slotted.client;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.google.gwt.activity.shared.Activity;
 import com.google.gwt.activity.shared.ActivityMapper;
+import com.google.gwt.core.client.Callback;
 import com.google.gwt.core.client.GWT;
 import com.google.gwt.place.shared.Place;
 import com.google.gwt.place.shared.PlaceHistoryMapper;
@@ -57,7 +61,7 @@ abstract public class HistoryMapper {
         }
 
         @Override public SlottedPlace getPlace(String token) {
-            Place place = placeFactory.newInstance(placeClass);
+            Place place = newPlaceInstance(placeClass);
             if (place instanceof SlottedPlace) {
                 return (SlottedPlace) place;
             } else {
@@ -76,12 +80,19 @@ abstract public class HistoryMapper {
     private HashMap<Class, String> placeToNameMap = new HashMap<Class, String>();
     private HashMap<Class, Class<? extends SlottedPlace>[]> activityCacheMap = new HashMap<Class, Class<? extends SlottedPlace>[]>();
     private HashMap<Class, Class<? extends CodeSplitMapper>> codeSplitMap = new HashMap<Class, Class<? extends CodeSplitMapper>>();
+    private HashMap<Class, PlaceHierarchyTemplate> hierarchyTemplateMap = new HashMap<Class, PlaceHierarchyTemplate>();
+    private HashSet<Class> cacheSlotsEnabled = new HashSet<Class>();
     private SlottedPlace defaultPlace;
     private SlottedPlace errorPlace;
     private ActivityMapper legacyActivityMapper;
     private PlaceHistoryMapper legacyHistoryMapper;
+    private ParsedTokenCache parsedTokenCache = new ParsedTokenCache(50);
+    private HashMap<Integer, String> idToNameMap = new HashMap<Integer, String>();
+    private HashMap<String, Integer> nameToIdMap = new HashMap<String, Integer>();
+    private boolean compactTokens;
     private boolean handlingHistory;
     private String handlingToken;
+    private int historyGeneration;
 
     /**
      * Default constructor which adds itself as a History listener and calls init() on the base
@@ -304,15 +315,114 @@ abstract public class HistoryMapper {
             PlaceTokenizer<? extends SlottedPlace> tokenizer, Class<? extends SlottedPlace>[] placeActivitiesToCache,
             Class<? extends CodeSplitMapper> codeSplitMapper)
     {
-        Place place = placeFactory.newInstance(placeClass);
+        PlaceHierarchyTemplate template = createHierarchyTemplate(placeClass);
+        registerPlaceMetadata(placeClass, placeActivitiesToCache, codeSplitMapper);
+        enableCacheSlots(placeClass);
+
+        if (tokenizer == null) {
+            tokenizer = new DefaultPlaceTokenizer(placeClass, legacyActivityMapper);
+        }
+
+        if (name == null) {
+            name = placeClass.getName();
+            int index = name.lastIndexOf(".");
+            if (name.endsWith("Place")) {
+                name = name.substring(index + 1, name.length() - 5);
+            } else {
+                name = name.substring(index + 1);
+            }
+        }
+
+	    name = name.toLowerCase();
+        nameToTokenizerMap.put(name, tokenizer);
+        parsedTokenCache.clear();
+        placeToNameMap.put(placeClass, name);
+        hierarchyTemplateMap.put(placeClass, template);
+    }
+
+    /**
+     * Records the metadata of a Place that isn't used for History tokens.  This is called by
+     * {@link #registerPlace(Class, String, PlaceTokenizer, Class[], Class)}, and by generated AutoHistoryMappers
+     * only for Places that have @CacheActivities or @CodeSplit, because the generator has already checked the
+     * Places and looks up their names and tokenizers with generated code.  The @CacheActivities Places aren't
+     * created here; their Slots are enabled for background display the first time the Place is displayed.
+     *
+     * @param placeClass The Class of the place to be managed.
+     * @param placeActivitiesToCache Array of child Activities that should be cached while the Place
+     *                               in the heirarchy.
+     * @param codeSplitMapper The CodeSplitMapper used to load the Place's Activity, or null.
+     */
+    protected void registerPlaceMetadata(Class<? extends Place> placeClass,
+            Class<? extends SlottedPlace>[] placeActivitiesToCache, Class<? extends CodeSplitMapper> codeSplitMapper)
+    {
+        if (placeActivitiesToCache != null && placeActivitiesToCache.length > 0) {
+            activityCacheMap.put(placeClass, placeActivitiesToCache);
+        }
+        if (codeSplitMapper != null) {
+            codeSplitMap.put(placeClass, codeSplitMapper);
+        }
+    }
+
+    /**
+     * Creates the Place's @CacheActivities Places and enables background display on their Slots, once per Place
+     * class.  This runs before the Place's Activity starts, so Slots below the Place get their display after
+     * it is enabled.
+     */
+    private void enableCacheSlots(Class placeClass) {
+        Class<? extends SlottedPlace>[] placeActivitiesToCache = activityCacheMap.get(placeClass);
+        if (placeActivitiesToCache == null || !cacheSlotsEnabled.add(placeClass)) {
+            return;
+        }
+        for (Class cacheClass: placeActivitiesToCache) {
+            Slot slot;
+            try {
+                SlottedPlace cachePlace = (SlottedPlace) newPlaceInstance(cacheClass);
+                slot = cachePlace.getParentSlot();
+            } catch (Exception e) {
+                throw new IllegalStateException("Cache Activity/Places must be a SlottedPlace with a default " +
+                        "constructor which can be private.");
+            }
+            if (slot.getDisplay() != null) {
+                log.warning(cacheClass.getName() + " is cached by " + placeClass.getName() + ", but its Slot " +
+                        "is already displayed, so background display starts when the Slot's owner restarts.  " +
+                        "Set slotted.validate.places to true to enable it at startup.");
+            }
+            slot.enableBackgroundDisplay();
+        }
+    }
+
+    /**
+     * Creates each Place to validate its Slots and enable the Slots of its @CacheActivities.  Generated
+     * AutoHistoryMappers otherwise do this the first time a Place is needed, so they call this from init() in
+     * development mode, and in production when the slotted.validate.places configuration property is true, to
+     * report misconfigured Slots when the application starts.  Places in a code split PlaceRegistry are still
+     * validated after their fragment loads.
+     *
+     * @param placeClasses The Place classes to validate.
+     */
+    protected void validatePlaces(Class[] placeClasses) {
+        for (Class placeClass: placeClasses) {
+            getHierarchyTemplate(placeClass);
+            enableCacheSlots(placeClass);
+        }
+    }
+
+    /**
+     * Creates an instance of the Place to validate its Slots and record them in a template.
+     *
+     * @return The template, or null if the Place isn't a SlottedPlace.
+     */
+    private PlaceHierarchyTemplate createHierarchyTemplate(Class<? extends Place> placeClass) {
+        Place place = newPlaceInstance(placeClass);
         if (place == null) {
             throw new IllegalStateException("To register a Place, it must have a default " +
                     "constructor that may be private: " + placeClass.getName());
         }
-        Slot[] childSlots = null;
-        if (place instanceof SlottedPlace) {
-            childSlots = ((SlottedPlace) place).getChildSlots();
+        if (!(place instanceof SlottedPlace)) {
+            return null;
         }
+
+        Slot[] childSlots = ((SlottedPlace) place).getChildSlots();
         if (childSlots != null) {
             for (Slot child: childSlots) {
                 if (child.getOwnerPlace() == null || child.getDefaultPlace() == null) {
@@ -332,36 +442,97 @@ abstract public class HistoryMapper {
             }
         }
 
-        if (tokenizer == null) {
-            tokenizer = new DefaultPlaceTokenizer(placeClass, legacyActivityMapper);
+        return new PlaceHierarchyTemplate(this, childSlots);
+    }
+
+    /**
+     * Gets the child Slots and default Places of a registered Place class.  Places registered by a generated
+     * AutoHistoryMapper are instantiated and their Slots validated the first time this is called, unless
+     * {@link #validatePlaces(Class[])} already did it when the application started.
+     *
+     * @param placeClass The Place class to get the template for.
+     * @return The template, or null if the Place class wasn't registered.
+     */
+    public PlaceHierarchyTemplate getHierarchyTemplate(Class<? extends Place> placeClass) {
+        PlaceHierarchyTemplate template = hierarchyTemplateMap.get(placeClass);
+        if (template == null && !hierarchyTemplateMap.containsKey(placeClass)) {
+            String name = getPlaceName(placeClass);
+            if (name != null && isRegistryLoaded(getRegistryMapper(name))) {
+                template = createHierarchyTemplate(placeClass);
+                hierarchyTemplateMap.put(placeClass, template);
+            }
         }
+        return template;
+    }
 
-        if (name == null) {
-            name = placeClass.getName();
-            int index = name.lastIndexOf(".");
-            if (name.endsWith("Place")) {
-                name = name.substring(index + 1, name.length() - 5);
-            } else {
-                name = name.substring(index + 1);
+    /**
+     * Creates a Place with the PlaceFactory, or with a loaded {@link PlaceRegistry} for Places that are
+     * registered in a code split fragment.
+     */
+    private Place newPlaceInstance(Class placeClass) {
+        Place place = placeFactory.newInstance(placeClass);
+        if (place == null) {
+            for (PlaceRegistry registry: PlaceRegistry.registries.values()) {
+                place = registry.newInstance(placeClass);
+                if (place != null) {
+                    break;
+                }
             }
         }
+        return place;
+    }
 
-	    name = name.toLowerCase();
-        nameToTokenizerMap.put(name, tokenizer);
-        placeToNameMap.put(placeClass, name);
-        if (placeActivitiesToCache != null && placeActivitiesToCache.length > 0) {
-            activityCacheMap.put(placeClass, placeActivitiesToCache);
-            try {
-                for (Class cacheClass: placeActivitiesToCache) {
-                    SlottedPlace cachePlace = (SlottedPlace) placeFactory.newInstance(cacheClass);
-                    cachePlace.getParentSlot().enableBackgroundDisplay();
+    /**
+     * Gets the {@link CodeSplitMapper} whose fragment registers the Place, for Places that are in a
+     * {@link CodeSplitRegistry}.  Generated AutoHistoryMappers override this.
+     *
+     * @param name The lowercase name of the Place.
+     * @return The mapper interface, or null if the Place is registered in the initial fragment.
+     */
+    protected Class<? extends CodeSplitMapper> getRegistryMapper(String name) {
+        return null;
+    }
+
+    /**
+     * Gets the tokenizer for a Place in a {@link CodeSplitRegistry}.
+     *
+     * @return The tokenizer, or null if the mapper's fragment isn't loaded.
+     */
+    protected PlaceTokenizer<? extends SlottedPlace> getRegistryTokenizer(String name,
+            Class<? extends CodeSplitMapper> mapperClass)
+    {
+        if (mapperClass != null) {
+            PlaceRegistry registry = PlaceRegistry.registries.get(mapperClass);
+            if (registry != null) {
+                return registry.getTokenizer(name);
+            }
+        }
+        return null;
+    }
+
+    private boolean isRegistryLoaded(Class<? extends CodeSplitMapper> mapperClass) {
+        return mapperClass == null || PlaceRegistry.registries.containsKey(mapperClass);
+    }
+
+    /**
+     * Finds a Place whose {@link CodeSplitRegistry} fragment isn't loaded yet, which must be loaded before
+     * the Places can be navigated to.
+     *
+     * @param places The Places that will be navigated to.
+     * @return The mapper interface to load, or null if all the Places' registries are loaded.
+     */
+    public Class<? extends CodeSplitMapper> getUnloadedRegistry(List<SlottedPlace> places) {
+        for (SlottedPlace place: places) {
+            Place actualPlace = place instanceof WrappedPlace ? ((WrappedPlace) place).getPlace() : place;
+            String name = getPlaceName(actualPlace.getClass());
+            if (name != null) {
+                Class<? extends CodeSplitMapper> mapperClass = getRegistryMapper(name);
+                if (!isRegistryLoaded(mapperClass)) {
+                    return mapperClass;
                 }
-            } catch (Exception e) {
-                throw new IllegalStateException("Cache Activity/Places must be a SlottedPlace with a default " +
-                        "constructor which can be private.");
             }
         }
-        codeSplitMap.put(placeClass, codeSplitMapper);
+        return null;
     }
 
     /**
@@ -373,18 +544,25 @@ abstract public class HistoryMapper {
         RuntimeException parsingException = null;
         handlingHistory = !createUrl;
         handlingToken = token;
+        historyGeneration++;
         try {
             if (token == null || token.trim().isEmpty()) {
                 navDefaultPlace(controller);
             } else {
                 SlottedPlace[] places = null;
+                double parseStart = NavigationTrace.now();
                 try {
                     places = parseToken(token);
                 } catch (RuntimeException e) {
                     parsingException = e;
                 }
 
-                if (parsingException == null) {
+                if (parsingException instanceof PlaceRegistryLoadException) {
+                    loadRegistry((PlaceRegistryLoadException) parsingException, token, createUrl, controller);
+                    parsingException = null;
+
+                } else if (parsingException == null) {
+                    controller.setTokenParseTiming(token, parseStart, NavigationTrace.now() - parseStart);
                     controller.goTo(places[0], places);
                 } else {
                     if (legacyHistoryMapper != null) {
@@ -408,6 +586,41 @@ abstract public class HistoryMapper {
         handlingHistory = false;
     }
 
+    /**
+     * Loads the fragment of a {@link CodeSplitRegistry} named in the token, and then handles the token again.
+     * The token is dropped if the History changed or another token was handled while loading.
+     */
+    private void loadRegistry(PlaceRegistryLoadException exception, final String token, final boolean createUrl,
+            final SlottedController controller)
+    {
+        CodeSplitMapper mapper = controller.getCodeSplitMapper(exception.getMapperClass());
+        if (mapper == null) {
+            throw new IllegalStateException("CodeSplitMapper not registered:" + exception.getMapperClass().getName());
+        }
+        final int generation = historyGeneration;
+        final String expectedToken = createUrl ? History.getToken() : token;
+        mapper.load(new Callback<Activity, Throwable>() {
+            @Override public void onSuccess(Activity result) {
+                if (isCurrentHistory(generation, expectedToken)) {
+                    handleHistory(token, createUrl, controller);
+                } else {
+                    log.info("Dropping stale url after loading places:" + token);
+                }
+            }
+
+            @Override public void onFailure(Throwable reason) {
+                log.log(Level.SEVERE, "Error loading places for url:" + token, reason);
+                if (isCurrentHistory(generation, expectedToken)) {
+                    navDefaultPlace(controller);
+                }
+            }
+        });
+    }
+
+    private boolean isCurrentHistory(int generation, String expectedToken) {
+        return generation == historyGeneration && expectedToken.equals(History.getToken());
+    }
+
     /**
      * Takes a history token and parses into SlottedPlaces bases on the registered PlaceTokenizers.
      *
@@ -416,45 +629,125 @@ abstract public class HistoryMapper {
      * @return List of SlottedPlaces newly created from the PlaceTokenizers
      */
     public SlottedPlace[] parseToken(String token) {
-        PlaceParameters parameters = new PlaceParameters();
+        ParsedToken parsedToken = parsedTokenCache.get(token);
+        if (parsedToken == null) {
+            parsedToken = parseTokenStructure(token);
+            parsedTokenCache.put(token, parsedToken);
+        }
 
-        String[] split = token.split("\\?");
-        String[] placeTokens = split[0].split("/");
+        return parsedToken.createPlaces();
+    }
 
-        if (split.length > 1) {
-            String[] paramPairs = split[1].split("&");
+    /**
+     * Splits the token into the tokenizer and parameter token of each Place, and the global parameters.
+     */
+    @SuppressWarnings("unchecked")
+    private ParsedToken parseTokenStructure(String token) {
+        ArrayList<String> placeTokens = new ArrayList<String>();
+        ArrayList<String> names = new ArrayList<String>();
+        ArrayList<String> parameterTokens = new ArrayList<String>();
+        ArrayList<String> parameterNames = new ArrayList<String>();
+        ArrayList<String> parameterValues = new ArrayList<String>();
+        if (CompactTokenCodec.isCompact(token)) {
+            scanCompactToken(token, placeTokens, names, parameterTokens, parameterNames, parameterValues);
+        } else {
+            TokenScanner.scan(token, placeTokens, names, parameterTokens, parameterNames, parameterValues);
+        }
 
-            for (String pair: paramPairs) {
-                String[] pairSplit = pair.split("=");
-                parameters.setParameter(pairSplit[0], pairSplit[1]);
-            }
+        PlaceTokenizer<? extends SlottedPlace>[] tokenizers = new PlaceTokenizer[placeTokens.size()];
+        for (int i = 0; i < tokenizers.length; i++) {
+	        String name = names.get(i).toLowerCase();
+            tokenizers[i] = getTokenizer(name);
+	        if (tokenizers[i] == null && !isRegistryLoaded(getRegistryMapper(name))) {
+		        throw new PlaceRegistryLoadException(getRegistryMapper(name));
+	        }
+	        if (tokenizers[i] == null) {
+		        throw new IllegalStateException("No tokenizer for:" + names.get(i));
+	        }
         }
 
-        SlottedPlace[] places = new SlottedPlace[placeTokens.length];
-        for (int i = 0; i < places.length; i++) {
-            String[] placeParts = placeTokens[i].split(":", 2);
-            String parameterToken = "";
-            if (placeParts.length == 2) {
-                parameterToken = placeParts[1];
-            }
+        return new ParsedToken(tokenizers, toArray(placeTokens), toArray(parameterTokens),
+                toArray(parameterNames), toArray(parameterValues));
+    }
 
-	        String name = placeParts[0].toLowerCase();
-            PlaceTokenizer<? extends SlottedPlace> tokenizer = nameToTokenizerMap.get(name);
-	        if (tokenizer == null) {
-		        throw new IllegalStateException("No tokenizer for:" + placeParts[0]);
-	        }
-            places[i] = tokenizer.getPlace(parameterToken);
-            if (tokenizer instanceof AutoTokenizer) {
-                //noinspection unchecked
-                ((AutoTokenizer) tokenizer).fillFields(parameters, places[i]);
+    private void scanCompactToken(String token, List<String> placeTokens, List<String> names,
+            List<String> parameterTokens, List<String> parameterNames, List<String> parameterValues)
+    {
+        ArrayList<Integer> placeIds = new ArrayList<Integer>();
+        CompactTokenCodec.decode(token, placeIds, names, parameterTokens, parameterNames, parameterValues);
+        for (int i = 0; i < placeIds.size(); i++) {
+            int id = placeIds.get(i);
+            String name = names.get(i);
+            if (id >= 0) {
+                name = getPlaceName(id);
+                if (name == null) {
+                    throw new IllegalStateException("No tokenizer for place id:" + id);
+                }
+                names.set(i, name);
             }
-            if (places[i] == null) {
-                throw new IllegalStateException("Place not defined:" + placeTokens[i]);
+            String parameterToken = parameterTokens.get(i);
+            placeTokens.add(parameterToken.isEmpty() ? name : name + ":" + parameterToken);
+        }
+    }
+
+    /**
+     * Converts a readable token into a compact token if {@link #setCompactTokens(boolean)} is enabled.  The
+     * readable token is returned if it contains Places that aren't registered, like legacy Places, or if the
+     * compact token isn't shorter.
+     */
+    private String finishToken(String token) {
+        if (!compactTokens) {
+            return token;
+        }
+
+        ArrayList<String> placeTokens = new ArrayList<String>();
+        ArrayList<String> names = new ArrayList<String>();
+        ArrayList<String> parameterTokens = new ArrayList<String>();
+        ArrayList<String> parameterNames = new ArrayList<String>();
+        ArrayList<String> parameterValues = new ArrayList<String>();
+        TokenScanner.scan(token, placeTokens, names, parameterTokens, parameterNames, parameterValues);
+
+        int[] placeIds = new int[names.size()];
+        for (int i = 0; i < placeIds.length; i++) {
+            String name = names.get(i).toLowerCase();
+            if (getTokenizer(name) == null) {
+                return token;
             }
-            places[i].setPlaceParameters(parameters);
+            names.set(i, name);
+            placeIds[i] = getPlaceId(name);
         }
 
-        return places;
+        String compactToken = CompactTokenCodec.encode(placeIds, names, parameterTokens, parameterNames,
+                parameterValues);
+        return compactToken.length() < token.length() ? compactToken : token;
+    }
+
+    /**
+     * Sets compactTokens (defaults false).  If true, created tokens are packed by {@link CompactTokenCodec},
+     * which identifies Places by their {@link CompactTokenId} instead of their name and packs integer
+     * parameters.  Places without an id are written with their name, and the readable token is used whenever
+     * the compact token isn't shorter.  Readable tokens are still parsed, so existing links keep working.
+     *
+     * @param compactTokens True to create compact tokens.
+     */
+    public void setCompactTokens(boolean compactTokens) {
+        this.compactTokens = compactTokens;
+    }
+
+    public boolean isCompactTokens() {
+        return compactTokens;
+    }
+
+    private static String[] toArray(List<String> list) {
+        return list.toArray(new String[list.size()]);
+    }
+
+    /**
+     * Gets the cache of parsed tokens used by {@link #parseToken(String)}, which can be used to change the
+     * size of the cache or read the hit/miss statistics.
+     */
+    public ParsedTokenCache getParsedTokenCache() {
+        return parsedTokenCache;
     }
 
     private void navDefaultPlace(SlottedController controller) {
@@ -486,8 +779,7 @@ abstract public class HistoryMapper {
     public void extractParameters(SlottedPlace place, PlaceParameters intoPlaceParameters) {
         place.extractParameters(intoPlaceParameters);
 
-        String name = placeToNameMap.get(place.getClass());
-        PlaceTokenizer tokenizer = nameToTokenizerMap.get(name);
+        PlaceTokenizer tokenizer = getTokenizer(getPlaceName(place.getClass()));
         if (tokenizer instanceof AutoTokenizer) {
             //noinspection unchecked
             ((AutoTokenizer) tokenizer).extractFields(intoPlaceParameters, place);
@@ -516,6 +808,7 @@ abstract public class HistoryMapper {
     @SuppressWarnings("unchecked")
     public List<Class<? extends SlottedPlace>> getPlacesOfActivitiesToCache(SlottedPlace place) {
         Class<? extends SlottedPlace>[] places = activityCacheMap.get(place.getClass());
+        enableCacheSlots(place.getClass());
         if (places == null) {
             return Collections.emptyList();
         } else {
@@ -523,31 +816,54 @@ abstract public class HistoryMapper {
         }
     }
 
-    private String createPlaceToken(SlottedPlace place) {
+    private void writePlaceToken(SlottedPlace place, TokenWriter writer) {
         Place actualPlace = place;
         if (place instanceof WrappedPlace) {
             actualPlace = ((WrappedPlace) place).getPlace();
         }
-        String token;
-        String name = placeToNameMap.get(actualPlace.getClass());
+        String name = getPlaceName(actualPlace.getClass());
         if (name != null) {
-            PlaceTokenizer tokenizer = nameToTokenizerMap.get(name);
-            @SuppressWarnings("unchecked")
-            String params = tokenizer.getToken(actualPlace);
-
-            token = name;
-            if (params != null && !params.isEmpty()) {
-                token += ":" + params;
+            PlaceTokenizer tokenizer = getTokenizer(name);
+            if (tokenizer == null) {
+                throw new IllegalStateException("The CodeSplitMapper fragment must be loaded before creating " +
+                        "a token for:" + actualPlace.getClass().getName());
+            }
+            writer.startPlace(name);
+            if (tokenizer instanceof GeneratedAutoTokenizer) {
+                //noinspection unchecked
+                ((GeneratedAutoTokenizer) tokenizer).writeToken(writer, actualPlace);
+            } else {
+                @SuppressWarnings("unchecked")
+                String params = tokenizer.getToken(actualPlace);
+                if (params != null) {
+                    writer.append(params);
+                }
             }
+            writer.endPlace();
 
         } else if (legacyHistoryMapper != null) {
-            token = legacyHistoryMapper.getToken(actualPlace);
+            writer.append(legacyHistoryMapper.getToken(actualPlace));
 
         } else {
             throw new IllegalStateException("Place not registered:" + place.getClass().getName());
         }
+    }
 
-        return token;
+    /**
+     * Gets the AutoTokenizer registered for the Place class.
+     *
+     * @param placeClass The Place class to get the tokenizer for.
+     * @return The AutoTokenizer, or null if the Place isn't registered or uses a different PlaceTokenizer.
+     */
+    public AutoTokenizer getAutoTokenizer(Class<? extends Place> placeClass) {
+        String name = getPlaceName(placeClass);
+        if (name != null) {
+            PlaceTokenizer tokenizer = getTokenizer(name);
+            if (tokenizer instanceof AutoTokenizer) {
+                return (AutoTokenizer) tokenizer;
+            }
+        }
+        return null;
     }
 
     /**
@@ -555,10 +871,67 @@ abstract public class HistoryMapper {
      *
      * @param placeClass The Place to get the name for.
      */
-    public String getPlaceName(Class<? extends SlottedPlace> placeClass) {
+    public String getPlaceName(Class<? extends Place> placeClass) {
         return placeToNameMap.get(placeClass);
     }
 
+    /**
+     * Gets the tokenizer for the lowercase Place name used in History tokens.
+     *
+     * @param name The name of the Place in the token.
+     * @return The tokenizer, or null if no Place is registered with the name.
+     */
+    protected PlaceTokenizer<? extends SlottedPlace> getTokenizer(String name) {
+        return nameToTokenizerMap.get(name);
+    }
+
+    /**
+     * Registers the id used for the Place in compact tokens, which is the runtime version of
+     * {@link CompactTokenId}.  The id is written into shared links, so it must never be reused for a
+     * different Place.
+     *
+     * @param placeClass The Class of a registered Place.
+     * @param id The id, which must be 0 or more.
+     */
+    public void registerCompactTokenId(Class<? extends Place> placeClass, int id) {
+        String name = getPlaceName(placeClass);
+        if (name == null) {
+            throw new IllegalStateException("Place must be registered before its compact token id:" +
+                    placeClass.getName());
+        }
+        if (id < 0) {
+            throw new IllegalArgumentException("Compact token id can't be negative:" + placeClass.getName());
+        }
+        String existing = getPlaceName(id);
+        if (existing != null && !existing.equals(name)) {
+            throw new IllegalStateException("Compact token id " + id + " is used by '" + existing + "' and '" +
+                    name + "'");
+        }
+        idToNameMap.put(id, name);
+        nameToIdMap.put(name, id);
+        parsedTokenCache.clear();
+    }
+
+    /**
+     * Gets the id used for the Place in compact tokens.
+     *
+     * @param name The lowercase name of the Place.
+     * @return The id, or -1 if the Place doesn't have an id and is written with its name.
+     */
+    protected int getPlaceId(String name) {
+        Integer id = nameToIdMap.get(name);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Gets the Place name for an id returned by {@link #getPlaceId(String)}.
+     *
+     * @return The lowercase name, or null if the id isn't used.
+     */
+    protected String getPlaceName(int id) {
+        return idToNameMap.get(id);
+    }
+
     /**
      * Creates a History token for the passed places, which can be used in links or other navigation
      * URLs.
@@ -568,16 +941,18 @@ abstract public class HistoryMapper {
      */
     public String createToken(SlottedPlace place, SlottedPlace... nonDefaultPlaces) {
         PlaceParameters placeParameters = new PlaceParameters();
-        String token = createPlaceToken(place);
+        TokenWriter writer = new TokenWriter();
+        writePlaceToken(place, writer);
         place.extractParameters(placeParameters);
         for (SlottedPlace nonDefaultPlace: nonDefaultPlaces) {
-            token += "/" + createPlaceToken(nonDefaultPlace);
+            writer.append('/');
+            writePlaceToken(nonDefaultPlace, writer);
             nonDefaultPlace.extractParameters(placeParameters);
         }
 
-        token += placeParameters.toString();
+        placeParameters.writeTo(writer);
 
-        return token;
+        return finishToken(writer.toString());
     }
 
     /**
@@ -587,7 +962,7 @@ abstract public class HistoryMapper {
         if (!handlingHistory) {
             String token = createToken(controller.getRoot(), controller);
             if (controller.isMainController) {
-                History.newItem(token, false);
+                newHistoryItem(token);
             }
             return token;
         } else {
@@ -595,6 +970,16 @@ abstract public class HistoryMapper {
         }
     }
 
+    /**
+     * Adds the token to the browser History, unless it is already the current token.  Tokens are
+     * canonical, so an unchanged token means nothing changed and no History entry or hashchange is needed.
+     */
+    static void newHistoryItem(String token) {
+        if (!token.equals(History.getToken())) {
+            History.newItem(token, false);
+        }
+    }
+
     /**
      * Creates a token based on the hierarchy defined by passed root slot.
      *
@@ -603,25 +988,23 @@ abstract public class HistoryMapper {
      * @return History token string that contains all the Places in the hierarchy.
      */
     protected String createToken(ActiveSlot activeSlot, SlottedController controller) {
-        String token;
-        token = createPageList(activeSlot);
+        TokenWriter writer = new TokenWriter();
+        writePageList(activeSlot, writer);
 
         PlaceParameters parameters = controller.getCurrentParameters();
         if (parameters != null) {
-            token += parameters.toString();
+            parameters.writeTo(writer);
         }
 
-        return token;
+        return finishToken(writer.toString());
     }
 
-    private String createPageList(ActiveSlot activeSlot) {
-        SlottedPlace place = activeSlot.getPlace();
-
-        String token = createPlaceToken(place);
+    private void writePageList(ActiveSlot activeSlot, TokenWriter writer) {
+        writePlaceToken(activeSlot.getPlace(), writer);
         for (ActiveSlot child: activeSlot.getChildren()) {
-            token += "/" + createPageList(child);
+            writer.append('/');
+            writePageList(child, writer);
         }
-        return token;
     }
 
 }
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2012 Jeffrey Kleiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.googlecode.slotted.client;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.googlecode.slotted.client.ActivityCache.Entry;
+
+/**
+ * Evicts the least recently used backgrounded Activities when a Slot has more than the max entries, and any
+ * Activity that has been in the background longer than the idle timeout.
+ */
+public class LruEvictionPolicy implements BackgroundEvictionPolicy {
+    private int maxEntries;
+    private double idleTimeout;
+
+    /**
+     * @param maxEntries The number of backgrounded Activities to keep per Slot, or 0 for no limit.
+     * @param idleTimeout The milliseconds an Activity can stay in the background, or 0 for no limit.
+     */
+    public LruEvictionPolicy(int maxEntries, double idleTimeout) {
+        this.maxEntries = maxEntries;
+        this.idleTimeout = idleTimeout;
+    }
+
+    @Override public List<Entry> selectEvictions(List<Entry> backgrounded, double now) {
+        ArrayList<Entry> evictions = new ArrayList<Entry>();
+        int overLimit = maxEntries > 0 ? backgrounded.size() - maxEntries : 0;
+        for (Entry entry: backgrounded) {
+            if (evictions.size() < overLimit ||
+                    (idleTimeout > 0 && now - entry.getLastUsed() > idleTimeout))
+            {
+                evictions.add(entry);
+            }
+        }
+        return evictions;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public double getIdleTimeout() {
+        return idleTimeout;
+    }
+}
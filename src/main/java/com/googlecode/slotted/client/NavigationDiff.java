@@ -0,0 +1,113 @@
+/*
+ * Copyright 2012 Jeffrey Kleiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.googlecode.slotted.client;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map.Entry;
+
+import com.googlecode.slotted.client.SlottedController.RootSlotImpl;
+
+/**
+ * An internal object that compares the requested hierarchy against the displayed ActiveSlot tree.  It maps each
+ * Slot to the Place it should display, and marks the ActiveSlots that change or have a descendant that changes, so
+ * navigation only needs to visit that portion of the tree.  This shouldn't be used outside of the framework.
+ */
+public class NavigationDiff {
+    private final HashMap<Slot, SlottedPlace> newPlaceMap = new HashMap<Slot, SlottedPlace>();
+    private final HashSet<ActiveSlot> dirtySlots = new HashSet<ActiveSlot>();
+    private final boolean reloadAll;
+
+    /**
+     * Creates the diff between the hierarchy displayed by the root and the new Places.
+     *
+     * @param root The root of the displayed hierarchy.
+     * @param newPlaces All the Places that will be navigated to.
+     * @param reloadAll If true, every ActiveSlot is treated as changed.
+     */
+    public NavigationDiff(ActiveSlot root, Iterable<SlottedPlace> newPlaces, boolean reloadAll) {
+        this.reloadAll = reloadAll;
+
+        for (SlottedPlace place: newPlaces) {
+            Slot key = getKey(place.getParentSlot());
+            if (!newPlaceMap.containsKey(key)) {
+                newPlaceMap.put(key, place);
+            }
+        }
+
+        if (!reloadAll) {
+            for (Entry<Slot, SlottedPlace> entry: newPlaceMap.entrySet()) {
+                ActiveSlot activeSlot;
+                if (entry.getKey() == SlottedController.RootSlot) {
+                    activeSlot = root;
+                } else {
+                    activeSlot = root.findSlot(entry.getKey());
+                }
+                if (activeSlot != null && !entry.getValue().equals(activeSlot.getPlace())) {
+                    markDirty(activeSlot);
+                }
+            }
+        }
+    }
+
+    private Slot getKey(Slot parentSlot) {
+        if (parentSlot == null || parentSlot instanceof RootSlotImpl) {
+            return SlottedController.RootSlot;
+        }
+        return parentSlot;
+    }
+
+    private void markDirty(ActiveSlot activeSlot) {
+        while (activeSlot != null && dirtySlots.add(activeSlot)) {
+            activeSlot = activeSlot.getParent();
+        }
+    }
+
+    /**
+     * Gets the Place requested for the ActiveSlot.
+     *
+     * @return The requested Place, or null if the navigation didn't specify a Place for the Slot.
+     */
+    public SlottedPlace getPlace(ActiveSlot activeSlot) {
+        if (activeSlot.getSlot().getOwnerPlace() == null) {
+            return newPlaceMap.get(SlottedController.RootSlot);
+        }
+        return newPlaceMap.get(activeSlot.getSlot());
+    }
+
+    /**
+     * Gets the Place requested for the Slot.
+     *
+     * @return The requested Place, or null if the navigation didn't specify a Place for the Slot.
+     */
+    public SlottedPlace getPlace(Slot slot) {
+        return newPlaceMap.get(getKey(slot));
+    }
+
+    /**
+     * Returns true if the ActiveSlot's Place or any of its descendant's Places change in this navigation.
+     */
+    public boolean isDirty(ActiveSlot activeSlot) {
+        return reloadAll || dirtySlots.contains(activeSlot);
+    }
+
+    /**
+     * Returns true if every ActiveSlot is treated as changed.
+     */
+    public boolean isReloadAll() {
+        return reloadAll;
+    }
+}
@@ -0,0 +1,78 @@
+package com.googlecode.slotted.client;
+
+/**
+ * Aggregates the total durations of traced navigations to one Place class.  Durations are counted in
+ * fixed buckets, where bucket i counts the durations less than {@link #BUCKET_LIMITS}[i] and the last
+ * bucket counts everything larger.
+ *
+ * @see SlottedController#getNavigationHistogram(Class)
+ */
+public class NavigationHistogram {
+    /**
+     * The upper limits of the buckets in milliseconds.
+     */
+    public static final double[] BUCKET_LIMITS = {16, 50, 100, 250, 500, 1000, 2500, 5000};
+
+    private int[] bucketCounts = new int[BUCKET_LIMITS.length + 1];
+    private int count;
+    private double totalDuration;
+    private double maxDuration;
+
+    /**
+     * Adds a navigation duration to the histogram.
+     *
+     * @param duration The duration in milliseconds.
+     */
+    public void add(double duration) {
+        int bucket = 0;
+        while (bucket < BUCKET_LIMITS.length && duration >= BUCKET_LIMITS[bucket]) {
+            bucket++;
+        }
+        bucketCounts[bucket]++;
+        count++;
+        totalDuration += duration;
+        if (duration > maxDuration) {
+            maxDuration = duration;
+        }
+    }
+
+    /**
+     * The number of navigations added.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * The average duration in milliseconds, or 0 if nothing was added.
+     */
+    public double getMeanDuration() {
+        return count == 0 ? 0 : totalDuration / count;
+    }
+
+    /**
+     * The longest duration in milliseconds.
+     */
+    public double getMaxDuration() {
+        return maxDuration;
+    }
+
+    /**
+     * Gets a copy of the counts for each bucket.  The array has one more entry than {@link #BUCKET_LIMITS}.
+     */
+    public int[] getBucketCounts() {
+        int[] copy = new int[bucketCounts.length];
+        System.arraycopy(bucketCounts, 0, copy, 0, bucketCounts.length);
+        return copy;
+    }
+
+    @Override public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("count=").append(count).append(" mean=").append(getMeanDuration()).append(" max=").append(maxDuration);
+        for (int i = 0; i < bucketCounts.length; i++) {
+            sb.append(i < BUCKET_LIMITS.length ? " <" + BUCKET_LIMITS[i] : " >=" + BUCKET_LIMITS[i - 1]);
+            sb.append(":").append(bucketCounts[i]);
+        }
+        return sb.toString();
+    }
+}
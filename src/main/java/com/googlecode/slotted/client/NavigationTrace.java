@@ -0,0 +1,176 @@
+package com.googlecode.slotted.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.gwt.core.client.Duration;
+
+/**
+ * Timings for the phases of a single navigation.  Traces are only recorded when a {@link Sampler} is set with
+ * {@link SlottedController#setNavigationTraceSampler(Sampler)}, and are published in a {@link NavigationTraceEvent}
+ * once the navigation completes.
+ *
+ * All times are in milliseconds as returned by {@link Duration#currentTimeMillis()}.
+ */
+public class NavigationTrace {
+    public static final String TOKEN_PARSE = "parseToken";
+    public static final String CREATE_HIERARCHY = "createHierarchyList";
+    public static final String NAVIGATION_OVERRIDE = "navigationOverride";
+    public static final String MAYBE_GO_TO = "maybeGoTo";
+    public static final String CONSTRUCT_STOP_START = "constructStopStart";
+    public static final String ACTIVITY_START = "activityStart";
+    public static final String ASYNC_WAIT = "asyncWait";
+    public static final String SHOW_VIEWS = "showViews";
+
+    /**
+     * Decides which navigations are traced.  This allows tracing a sample of real user navigations
+     * without paying the cost on every navigation.
+     */
+    public interface Sampler {
+        /**
+         * Called at the start of each navigation.
+         *
+         * @param place The Place being navigated to.
+         * @return true if the navigation should be traced.
+         */
+        boolean sample(SlottedPlace place);
+    }
+
+    /**
+     * Sampler that traces every navigation.
+     */
+    public static final Sampler SAMPLE_ALL = new Sampler() {
+        @Override public boolean sample(SlottedPlace place) {
+            return true;
+        }
+    };
+
+    /**
+     * The timing of one phase of the navigation.
+     */
+    public static class Phase {
+        private final String name;
+        private final String detail;
+        private final double startTime;
+        private final double duration;
+
+        Phase(String name, String detail, double startTime, double duration) {
+            this.name = name;
+            this.detail = detail;
+            this.startTime = startTime;
+            this.duration = duration;
+        }
+
+        /**
+         * The phase name, which is one of the constants in NavigationTrace.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Additional information like the Place or Activity the phase was for, or null.
+         */
+        public String getDetail() {
+            return detail;
+        }
+
+        public double getStartTime() {
+            return startTime;
+        }
+
+        public double getDuration() {
+            return duration;
+        }
+
+        @Override public String toString() {
+            return name + (detail != null ? "(" + detail + ")" : "") + ":" + duration + "ms";
+        }
+    }
+
+    private SlottedPlace place;
+    private final double startTime;
+    private double endTime;
+    private ArrayList<Phase> phases = new ArrayList<Phase>();
+
+    protected NavigationTrace(SlottedPlace place) {
+        this.place = place;
+        this.startTime = Duration.currentTimeMillis();
+    }
+
+    /**
+     * Returns the current time, for use as the start time of a phase.
+     */
+    public static double now() {
+        return Duration.currentTimeMillis();
+    }
+
+    /**
+     * Records a phase that started at the passed time and ends now.
+     *
+     * @param name The phase name.
+     * @param detail Additional information about the phase, or null.
+     * @param phaseStartTime The value of {@link #now()} when the phase started.
+     */
+    public void addPhase(String name, String detail, double phaseStartTime) {
+        phases.add(new Phase(name, detail, phaseStartTime, now() - phaseStartTime));
+    }
+
+    void addPhase(Phase phase) {
+        phases.add(phase);
+    }
+
+    void setPlace(SlottedPlace place) {
+        this.place = place;
+    }
+
+    void finish() {
+        endTime = now();
+    }
+
+    /**
+     * The Place that was navigated to, after any {@link NavigationOverride} was applied.
+     */
+    public SlottedPlace getPlace() {
+        return place;
+    }
+
+    public double getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * The time from the start of goTo() processing until the navigation completed.  Token parsing
+     * happens before the navigation starts, so it is not included.
+     */
+    public double getTotalDuration() {
+        return endTime - startTime;
+    }
+
+    /**
+     * All the recorded phases in the order they completed.
+     */
+    public List<Phase> getPhases() {
+        return Collections.unmodifiableList(phases);
+    }
+
+    /**
+     * Gets the sum of the durations for all the phases with the passed name.
+     *
+     * @param name The phase name, which is one of the constants in NavigationTrace.
+     */
+    public double getPhaseDuration(String name) {
+        double duration = 0;
+        for (Phase phase: phases) {
+            if (phase.name.equals(name)) {
+                duration += phase.duration;
+            }
+        }
+        return duration;
+    }
+
+    @Override public String toString() {
+        return "NavigationTrace " + place + ":" + getTotalDuration() + "ms " + phases;
+    }
+}
@@ -0,0 +1,67 @@
+package com.googlecode.slotted.client;
+
+import com.google.gwt.event.shared.EventHandler;
+import com.google.gwt.event.shared.GwtEvent;
+import com.google.gwt.event.shared.HandlerManager;
+
+public class NavigationTraceEvent extends GwtEvent<NavigationTraceEvent.Handler> {
+    public static final Type<Handler> Type = new Type<Handler>();
+
+    /**
+     * The Handler for the NavigationTraceEvent.
+     */
+    public interface Handler extends EventHandler {
+        /**
+         * Called after a traced navigation is complete.
+         *
+         * @param navigationTraceEvent Event containing the timings for the navigation
+         */
+        void navigationTraced(NavigationTraceEvent navigationTraceEvent);
+    }
+
+    private NavigationTrace trace;
+    private SlottedController source;
+
+    /**
+     * Creates a new event.
+     *
+     * @param trace The timings of the navigation.
+     * @param source The SlottedController that processed the navigation
+     */
+    protected NavigationTraceEvent(NavigationTrace trace, SlottedController source) {
+        this.trace = trace;
+        this.source = source;
+    }
+
+    /**
+     * Gets the source SlottedController that processed the navigation.
+     */
+    @Override
+    public SlottedController getSource() {
+        return source;
+    }
+
+    /**
+     * Gets the timings of the navigation.
+     */
+    public NavigationTrace getTrace() {
+        return trace;
+    }
+
+    /**
+     * @return The type used to register handlers.
+     */
+    public Type<Handler> getAssociatedType() {
+        return Type;
+    }
+
+    /**
+     * Should only be called by {@link HandlerManager}. In other words, do not use
+     * or call.
+     *
+     * @param handler handler
+     */
+    protected void dispatch(Handler handler) {
+        handler.navigationTraced(this);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2012 Jeffrey Kleiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.googlecode.slotted.client;
+
+import com.google.gwt.place.shared.PlaceTokenizer;
+
+/**
+ * An internal object that holds the structure of a parsed History token: the tokenizer and parameter token
+ * for each Place, and the global parameter pairs.  It can be reused to create new Places for the same token
+ * without splitting the token again.  This shouldn't be used outside of the framework.
+ */
+public class ParsedToken {
+    private final PlaceTokenizer<? extends SlottedPlace>[] tokenizers;
+    private final String[] placeTokens;
+    private final String[] parameterTokens;
+    private final String[] parameterNames;
+    private final String[] parameterValues;
+
+    /**
+     * @param tokenizers The tokenizer for each Place segment.
+     * @param placeTokens The complete Place segments, used in error messages.
+     * @param parameterTokens The Place specific part of each segment after the ':', or "".
+     * @param parameterNames The names of the global parameters.
+     * @param parameterValues The values of the global parameters, in the same order as the names.
+     */
+    public ParsedToken(PlaceTokenizer<? extends SlottedPlace>[] tokenizers, String[] placeTokens,
+            String[] parameterTokens, String[] parameterNames, String[] parameterValues)
+    {
+        this.tokenizers = tokenizers;
+        this.placeTokens = placeTokens;
+        this.parameterTokens = parameterTokens;
+        this.parameterNames = parameterNames;
+        this.parameterValues = parameterValues;
+    }
+
+    /**
+     * Creates new Places for the token.  Each call returns new instances that share a new PlaceParameters.
+     *
+     * @return List of SlottedPlaces newly created from the PlaceTokenizers
+     */
+    public SlottedPlace[] createPlaces() {
+        PlaceParameters parameters = new PlaceParameters();
+        for (int i = 0; i < parameterNames.length; i++) {
+            parameters.setParameter(parameterNames[i], parameterValues[i]);
+        }
+
+        SlottedPlace[] places = new SlottedPlace[tokenizers.length];
+        for (int i = 0; i < places.length; i++) {
+            PlaceTokenizer<? extends SlottedPlace> tokenizer = tokenizers[i];
+            places[i] = tokenizer.getPlace(parameterTokens[i]);
+            if (tokenizer instanceof AutoTokenizer) {
+                //noinspection unchecked
+                ((AutoTokenizer) tokenizer).fillFields(parameters, places[i]);
+            }
+            if (places[i] == null) {
+                throw new IllegalStateException("Place not defined:" + placeTokens[i]);
+            }
+            places[i].setPlaceParameters(parameters);
+        }
+
+        return places;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2012 Jeffrey Kleiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.googlecode.slotted.client;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used cache of {@link ParsedToken}s keyed by the History token, which is used by
+ * {@link HistoryMapper#parseToken(String)} so navigating to a recent token doesn't parse it again.
+ */
+public class ParsedTokenCache {
+    private int maxSize;
+    private int hits;
+    private int misses;
+    private LinkedHashMap<String, ParsedToken> cache = new LinkedHashMap<String, ParsedToken>(16, 0.75f, true) {
+        @Override protected boolean removeEldestEntry(Map.Entry<String, ParsedToken> eldest) {
+            return size() > maxSize;
+        }
+    };
+
+    /**
+     * @param maxSize The number of tokens to keep.  0 disables the cache.
+     */
+    public ParsedTokenCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Gets the parsed structure for the token, and counts the hit or miss.
+     *
+     * @return The cached ParsedToken or null if the token isn't cached.
+     */
+    public ParsedToken get(String token) {
+        ParsedToken parsedToken = cache.get(token);
+        if (parsedToken != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return parsedToken;
+    }
+
+    public void put(String token, ParsedToken parsedToken) {
+        if (maxSize > 0) {
+            cache.put(token, parsedToken);
+        }
+    }
+
+    /**
+     * Sets the number of tokens to keep, removing the least recently used tokens if there are more.
+     *
+     * @param maxSize The number of tokens to keep.  0 disables the cache.
+     */
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+        if (maxSize == 0) {
+            cache.clear();
+        } else {
+            while (cache.size() > maxSize) {
+                cache.remove(cache.keySet().iterator().next());
+            }
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    /**
+     * Returns the number of parseToken() calls that used a cached token.
+     */
+    public int getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of parseToken() calls that had to parse the token.
+     */
+    public int getMisses() {
+        return misses;
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    public void resetStatistics() {
+        hits = 0;
+        misses = 0;
+    }
+}
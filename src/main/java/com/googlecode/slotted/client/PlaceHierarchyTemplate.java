@@ -0,0 +1,117 @@
+/*
+ * Copyright 2012 Jeffrey Kleiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.googlecode.slotted.client;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * An internal object that holds the child Slots of a Place class and the default Places displayed below it,
+ * so navigation doesn't call {@link SlottedPlace#getChildSlots()} and walk the default Places every time.  It
+ * is created when the Place is registered, and assumes getChildSlots() returns the same Slots for every instance
+ * of the class.  This shouldn't be used outside of the framework.
+ */
+public class PlaceHierarchyTemplate {
+    private static final Slot[] NoSlots = new Slot[0];
+
+    private final HistoryMapper historyMapper;
+    private final Slot[] childSlots;
+    private SlottedPlace[] defaultDescendants;
+    private Slot[] defaultDescendantSlots;
+    private HashSet<Slot> descendantSlots;
+
+    /**
+     * @param historyMapper Used to get the templates of the default Places.
+     * @param childSlots The result of {@link SlottedPlace#getChildSlots()}, which may be null.
+     */
+    public PlaceHierarchyTemplate(HistoryMapper historyMapper, Slot[] childSlots) {
+        this.historyMapper = historyMapper;
+        this.childSlots = childSlots != null ? childSlots.clone() : NoSlots;
+    }
+
+    /**
+     * Gets the child Slots of the Place class.  The array must not be changed.
+     */
+    public Slot[] getChildSlots() {
+        return childSlots;
+    }
+
+    /**
+     * Gets all the default Places below the Place class, in the order they are added to the hierarchy list.
+     * The array must not be changed.
+     */
+    public SlottedPlace[] getDefaultDescendants() {
+        compile();
+        return defaultDescendants;
+    }
+
+    /**
+     * Gets the Slot each Place returned by {@link #getDefaultDescendants()} is displayed in.
+     */
+    public Slot[] getDefaultDescendantSlots() {
+        compile();
+        return defaultDescendantSlots;
+    }
+
+    /**
+     * Returns true if any of the passed Places would replace a default Place below this Place class.
+     *
+     * @param places The non default Places of the navigation.
+     */
+    public boolean isOverlaid(List<SlottedPlace> places) {
+        compile();
+        for (SlottedPlace place: places) {
+            if (descendantSlots.contains(place.getParentSlot())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Walks the default Places the first time it is needed, because the default Places might be registered
+     * after this Place.
+     */
+    private void compile() {
+        if (defaultDescendants == null) {
+            ArrayList<SlottedPlace> places = new ArrayList<SlottedPlace>();
+            ArrayList<Slot> slots = new ArrayList<Slot>();
+            addDefaults(childSlots, places, slots);
+            descendantSlots = new HashSet<Slot>(slots);
+            defaultDescendantSlots = slots.toArray(new Slot[slots.size()]);
+            defaultDescendants = places.toArray(new SlottedPlace[places.size()]);
+        }
+    }
+
+    private void addDefaults(Slot[] slots, List<SlottedPlace> places, List<Slot> placeSlots) {
+        for (Slot slot: slots) {
+            SlottedPlace place = slot.getDefaultPlace();
+            places.add(place);
+            placeSlots.add(slot);
+
+            PlaceHierarchyTemplate template = historyMapper.getHierarchyTemplate(place.getClass());
+            if (template != null) {
+                addDefaults(template.childSlots, places, placeSlots);
+            } else {
+                Slot[] grandChildSlots = place.getChildSlots();
+                if (grandChildSlots != null) {
+                    addDefaults(grandChildSlots, places, placeSlots);
+                }
+            }
+        }
+    }
+}
@@ -15,7 +15,7 @@
  */
 package com.googlecode.slotted.client;
 
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.logging.Logger;
@@ -26,10 +26,120 @@ import java.util.logging.Logger;
  * instance that has all the global parameters for all Places. Two Places setting the same global parameter,
  * one will overwrite the others value.  It is the responsibility of the developer to avoid this conflict, or
  * use {@link TokenizerParameter} which associates values to a specific place.
+ *
+ * Parameters are written to the History token in the order they were first set, which for AutoTokenizers is
+ * the declaration order of the {@link GlobalParameter} fields, so the same state always creates the same token.
+ *
+ * Values are stored with their type.  A number set with a primitive is only converted to a String when the
+ * String is needed, and a String value is parsed at most once for each numeric type that reads it.
  */
 public class PlaceParameters {
     private static final Logger log = Logger.getLogger(SlottedController.class.getName());
-    private HashMap<String, String> paramMap = new HashMap<String, String>();
+    private LinkedHashMap<String, Value> paramMap = new LinkedHashMap<String, Value>();
+
+    /**
+     * A parameter value, which keeps the value it was set with and caches the results of parsing it.
+     */
+    private static class Value {
+        private static final int STRING = 0;
+        private static final int INT = 1;
+        private static final int LONG = 2;
+        private static final int FLOAT = 3;
+        private static final int DOUBLE = 4;
+
+        private final int kind;
+        private String string;
+        private boolean hasInt;
+        private int intValue;
+        private boolean hasLong;
+        private long longValue;
+        private boolean hasFloat;
+        private float floatValue;
+        private boolean hasDouble;
+        private double doubleValue;
+
+        Value(String string) {
+            kind = STRING;
+            this.string = string;
+        }
+
+        Value(int value) {
+            kind = INT;
+            hasInt = true;
+            intValue = value;
+            hasLong = true;
+            longValue = value;
+        }
+
+        Value(long value) {
+            kind = LONG;
+            hasLong = true;
+            longValue = value;
+        }
+
+        Value(float value) {
+            kind = FLOAT;
+            hasFloat = true;
+            floatValue = value;
+        }
+
+        Value(double value) {
+            kind = DOUBLE;
+            hasDouble = true;
+            doubleValue = value;
+        }
+
+        String getString() {
+            if (string == null) {
+                switch (kind) {
+                    case INT:
+                        string = "" + intValue;
+                        break;
+                    case LONG:
+                        string = "" + longValue;
+                        break;
+                    case FLOAT:
+                        string = "" + floatValue;
+                        break;
+                    default:
+                        string = "" + doubleValue;
+                }
+            }
+            return string;
+        }
+
+        int getInt() {
+            if (!hasInt) {
+                intValue = Integer.parseInt(getString());
+                hasInt = true;
+            }
+            return intValue;
+        }
+
+        long getLong() {
+            if (!hasLong) {
+                longValue = Long.parseLong(getString());
+                hasLong = true;
+            }
+            return longValue;
+        }
+
+        float getFloat() {
+            if (!hasFloat) {
+                floatValue = Float.parseFloat(getString());
+                hasFloat = true;
+            }
+            return floatValue;
+        }
+
+        double getDouble() {
+            if (!hasDouble) {
+                doubleValue = Double.parseDouble(getString());
+                hasDouble = true;
+            }
+            return doubleValue;
+        }
+    }
 
     /**
      * Same as {@link #set(String, String)}
@@ -48,7 +158,7 @@ public class PlaceParameters {
         if (value == null ) {
             value = "";
         }
-        paramMap.put(name, value);
+        paramMap.put(name, new Value(value));
     }
 
     /**
@@ -58,7 +168,7 @@ public class PlaceParameters {
      * @param value The value, which will be converted to a String.
      */
     public void set(String name, int value) {
-        paramMap.put(name, "" + value);
+        paramMap.put(name, new Value(value));
     }
 
     /**
@@ -68,7 +178,7 @@ public class PlaceParameters {
      * @param value The value, which will be converted to a String.
      */
     public void set(String name, long value) {
-        paramMap.put(name, "" + value);
+        paramMap.put(name, new Value(value));
     }
 
     /**
@@ -78,7 +188,7 @@ public class PlaceParameters {
      * @param value The value, which will be converted to a String.
      */
     public void set(String name, float value) {
-        paramMap.put(name, "" + value);
+        paramMap.put(name, new Value(value));
     }
 
     /**
@@ -88,14 +198,14 @@ public class PlaceParameters {
      * @param value The value, which will be converted to a String.
      */
     public void set(String name, double value) {
-        paramMap.put(name, "" + value);
+        paramMap.put(name, new Value(value));
     }
 
     /**
      * Same as {@link #get(String)}
      */
     public String getParameter(String name) {
-        return paramMap.get(name);
+        return get(name);
     }
 
     /**
@@ -104,7 +214,8 @@ public class PlaceParameters {
      * @return String value or null if the value was never set.
      */
     public String get(String name) {
-        return paramMap.get(name);
+        Value value = paramMap.get(name);
+        return value != null ? value.getString() : null;
     }
 
     /**
@@ -114,9 +225,9 @@ public class PlaceParameters {
      * @throws NumberFormatException if the value isn't a valid number
      */
     public int getInt(String name) {
-        String value = paramMap.get(name);
+        Value value = paramMap.get(name);
         if (value != null) {
-            return new Integer(value);
+            return value.getInt();
         }
         return 0;
     }
@@ -128,9 +239,9 @@ public class PlaceParameters {
      * @throws NumberFormatException if the value isn't a valid number
      */
     public long getLong(String name) {
-        String value = paramMap.get(name);
+        Value value = paramMap.get(name);
         if (value != null) {
-            return new Long(value);
+            return value.getLong();
         }
         return 0;
     }
@@ -142,9 +253,9 @@ public class PlaceParameters {
      * @throws NumberFormatException if the value isn't a valid number
      */
     public float getFloat(String name) {
-        String value = paramMap.get(name);
+        Value value = paramMap.get(name);
         if (value != null) {
-            return new Float(value);
+            return value.getFloat();
         }
         return 0;
     }
@@ -156,9 +267,9 @@ public class PlaceParameters {
      * @throws NumberFormatException if the value isn't a valid number
      */
     public double getDouble(String name) {
-        String value = paramMap.get(name);
+        Value value = paramMap.get(name);
         if (value != null) {
-            return new Double(value);
+            return value.getDouble();
         }
         return 0;
     }
@@ -186,12 +297,13 @@ public class PlaceParameters {
     public void addPlaceParameters(PlaceParameters fromPlaceParameters, List<String> setKeys) {
         if (setKeys != null) {
             for (String key: setKeys) {
-                String existingValue = paramMap.get(key);
-                String fromValue = fromPlaceParameters.paramMap.get(key);
+                Value existingValue = paramMap.get(key);
+                Value fromValue = fromPlaceParameters.paramMap.get(key);
                 if (existingValue == null) {
                     paramMap.put(key, fromValue);
-                } else if (!existingValue.equals(fromValue)) {
-                    log.warning(key + " has second value that is being ignored: " + fromValue);
+                } else if (fromValue == null || !existingValue.getString().equals(fromValue.getString())) {
+                    log.warning(key + " has second value that is being ignored: " +
+                            (fromValue != null ? fromValue.getString() : null));
                 }
             }
         }
@@ -204,19 +316,21 @@ public class PlaceParameters {
      * @return Example: "&amp;key1=foo&amp;key2=Some+sentence+that+was+encoded."
      */
     public String toString() {
-        String string = "";
-        if (!paramMap.isEmpty()) {
-            for (Entry<String, String> entry: paramMap.entrySet()) {
-                if (string.isEmpty()) {
-                    string += "?";
-                } else {
-                    string += "&";
-                }
+        TokenWriter writer = new TokenWriter();
+        writeTo(writer);
+        return writer.toString();
+    }
 
-                string += entry.getKey() + "=" + entry.getValue();
-            }
+    /**
+     * Writes the parameters to the end of a History token, in the same format as {@link #toString()}.
+     */
+    public void writeTo(TokenWriter writer) {
+        boolean first = true;
+        for (Entry<String, Value> entry: paramMap.entrySet()) {
+            Value value = entry.getValue();
+            writer.appendGlobalParameter(first, entry.getKey(), value != null ? value.getString() : null);
+            first = false;
         }
-        return string;
     }
 
 
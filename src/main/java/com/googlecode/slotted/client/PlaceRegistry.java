@@ -0,0 +1,25 @@
+package com.googlecode.slotted.client;
+
+import java.util.HashMap;
+
+import com.google.gwt.place.shared.Place;
+import com.google.gwt.place.shared.PlaceTokenizer;
+
+/**
+ * PlaceRegistry is generated for a {@link CodeSplitMapper} marked with {@link CodeSplitRegistry}, and holds
+ * the tokenizers of the mapper's Places.  It is created in the mapper's fragment when the fragment loads, and
+ * added to {@link #registries} with the mapper interface as the key.
+ */
+public interface PlaceRegistry {
+    public HashMap<Class, PlaceRegistry> registries = new HashMap<Class, PlaceRegistry>();
+
+    /**
+     * Gets the tokenizer for the lowercase Place name, or null if the Place isn't in this registry.
+     */
+    PlaceTokenizer<? extends SlottedPlace> getTokenizer(String name);
+
+    /**
+     * Creates a new instance of the Place class, or returns null if the Place isn't in this registry.
+     */
+    Place newInstance(Class placeClass);
+}
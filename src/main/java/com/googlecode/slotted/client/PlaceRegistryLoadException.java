@@ -0,0 +1,18 @@
+package com.googlecode.slotted.client;
+
+/**
+ * Thrown when a History token names a Place whose {@link PlaceRegistry} isn't loaded yet.  The HistoryMapper
+ * loads the mapper's fragment and parses the token again.
+ */
+public class PlaceRegistryLoadException extends SlottedException {
+    private Class<? extends CodeSplitMapper> mapperClass;
+
+    public PlaceRegistryLoadException(Class<? extends CodeSplitMapper> mapperClass) {
+        super("Place registry isn't loaded:" + mapperClass.getName());
+        this.mapperClass = mapperClass;
+    }
+
+    public Class<? extends CodeSplitMapper> getMapperClass() {
+        return mapperClass;
+    }
+}
@@ -22,6 +22,7 @@ import com.google.gwt.user.client.ui.IsWidget;
 import com.google.gwt.user.client.ui.LayoutPanel;
 import com.google.gwt.user.client.ui.Widget;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 
 /**
@@ -36,8 +37,12 @@ public class Slot {
     private boolean backgroundEnabled;
     private LayoutPanel backgroundPanel;
     private HashMap<Activity, Widget> backgroundWidgets;
+    private HashMap<Widget, Integer> backgroundWeights;
     private Widget currentView;
     private boolean currentBackgroundable;
+    private BackgroundEvictionPolicy backgroundEvictionPolicy;
+    private HashMap<Class, ArrayList<IsWidget>> viewPool;
+    private int viewPoolSize = 1;
 
     /**
      * Create a Slot definition.
@@ -81,6 +86,7 @@ public class Slot {
         if (backgroundEnabled) {
             backgroundPanel = new LayoutPanel();
             backgroundWidgets = new HashMap<Activity, Widget>();
+            backgroundWeights = new HashMap<Widget, Integer>();
             display.setWidget(backgroundPanel);
         }
     }
@@ -96,9 +102,141 @@ public class Slot {
         backgroundEnabled = true;
     }
 
+    /**
+     * Sets the policy that decides which backgrounded Activities of this Slot are stopped.  This overrides
+     * {@link SlottedController#setBackgroundEvictionPolicy(BackgroundEvictionPolicy)}.
+     *
+     * @param backgroundEvictionPolicy The policy, or null to use the SlottedController's policy.
+     */
+    public void setBackgroundEvictionPolicy(BackgroundEvictionPolicy backgroundEvictionPolicy) {
+        this.backgroundEvictionPolicy = backgroundEvictionPolicy;
+    }
+
+    public BackgroundEvictionPolicy getBackgroundEvictionPolicy() {
+        return backgroundEvictionPolicy;
+    }
+
+    /**
+     * Removes the hidden widget of an evicted Activity from the background panel.
+     *
+     * @param activity The backgrounded Activity.
+     */
+    protected void removeBackgroundWidget(Activity activity) {
+        if (backgroundWidgets != null) {
+            Widget widget = backgroundWidgets.remove(activity);
+            if (widget != null) {
+                backgroundWeights.remove(widget);
+                if (widget != currentView) {
+                    backgroundPanel.remove(widget);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the number of backgrounded widgets that are hidden in this Slot.
+     */
+    public int getHiddenWidgetCount() {
+        if (backgroundWidgets == null) {
+            return 0;
+        }
+        int count = backgroundWidgets.size();
+        if (currentView != null && currentBackgroundable && backgroundWidgets.containsValue(currentView)) {
+            count--;
+        }
+        return count;
+    }
+
+    /**
+     * Gets the estimated DOM weight of a backgrounded Activity's widget, which is the number of elements the
+     * widget had when it was last hidden.
+     *
+     * @param activity The backgrounded Activity.
+     * @return The element count, or 0 if the widget hasn't been hidden.
+     */
+    public int getBackgroundWeight(Activity activity) {
+        if (backgroundWidgets != null) {
+            Widget widget = backgroundWidgets.get(activity);
+            if (widget != null) {
+                Integer weight = backgroundWeights.get(widget);
+                if (weight != null) {
+                    return weight;
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Takes a view that was released by a stopped Activity, so the next Activity can reuse it instead of
+     * creating the widgets again.  Views are pooled per Slot and by class.
+     *
+     * @param viewClass The class of the view.
+     * @return The view, or null if none was released.
+     * @see SlottedActivity#getPooledView(Class)
+     */
+    @SuppressWarnings("unchecked")
+    public <V extends IsWidget> V takeView(Class<V> viewClass) {
+        if (viewPool != null) {
+            ArrayList<IsWidget> views = viewPool.get(viewClass);
+            if (views != null && !views.isEmpty()) {
+                return (V) views.remove(views.size() - 1);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns a view to the pool, if the pool for its class isn't full.  The view stays attached until the
+     * next Activity sets its widget, so reusing it skips re-creating and re-attaching the widgets.
+     *
+     * @param view The view of a stopped Activity.
+     */
+    public void releaseView(IsWidget view) {
+        if (viewPoolSize > 0) {
+            if (viewPool == null) {
+                viewPool = new HashMap<Class, ArrayList<IsWidget>>();
+            }
+            ArrayList<IsWidget> views = viewPool.get(view.getClass());
+            if (views == null) {
+                views = new ArrayList<IsWidget>(viewPoolSize);
+                viewPool.put(view.getClass(), views);
+            }
+            if (views.size() < viewPoolSize && !views.contains(view)) {
+                views.add(view);
+            }
+        }
+    }
+
+    /**
+     * Sets the number of views kept per view class.  Defaults to 1.
+     *
+     * @param viewPoolSize The pool size, or 0 to disable the pool.
+     */
+    public void setViewPoolSize(int viewPoolSize) {
+        this.viewPoolSize = viewPoolSize;
+        if (viewPool != null) {
+            for (ArrayList<IsWidget> views: viewPool.values()) {
+                while (views.size() > viewPoolSize) {
+                    views.remove(views.size() - 1);
+                }
+            }
+        }
+    }
+
+    public int getViewPoolSize() {
+        return viewPoolSize;
+    }
+
     public void showView(IsWidget view, Activity activity, boolean backgroundable) {
         if (!backgroundEnabled) {
             display.setWidget(view);
+        } else if (view.asWidget() == currentView && !currentBackgroundable) {
+            // A pooled view reused by the next Activity is already displayed, so it doesn't need re-attaching.
+            currentBackgroundable = backgroundable;
+            if (backgroundable) {
+                backgroundWidgets.put(activity, currentView);
+            }
         } else {
             cleanupCurrent();
             currentView = view.asWidget();
@@ -120,6 +258,8 @@ public class Slot {
                 if (backgroundPanel.getWidgetIndex(currentView) > -1) {
                     backgroundPanel.getWidgetContainerElement(currentView).getStyle().setDisplay(Display.NONE);
                     currentView.setVisible(false);
+                    backgroundWeights.put(currentView,
+                            currentView.getElement().getElementsByTagName("*").getLength() + 1);
                 }
             } else {
                 backgroundPanel.remove(currentView);
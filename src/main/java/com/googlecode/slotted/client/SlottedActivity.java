@@ -15,6 +15,7 @@
  */
 package com.googlecode.slotted.client;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 
@@ -22,6 +23,7 @@ import com.google.gwt.activity.shared.AbstractActivity;
 import com.google.gwt.activity.shared.Activity;
 import com.google.gwt.place.shared.Place;
 import com.google.gwt.user.client.ui.AcceptsOneWidget;
+import com.google.gwt.user.client.ui.IsWidget;
 import com.google.web.bindery.event.shared.EventBus;
 
 /**
@@ -37,6 +39,7 @@ abstract public class SlottedActivity extends AbstractActivity{
     private EventBus eventBus;
     private ActiveSlot activeSlot;
     private HashSet<Object> loadingLabels = new HashSet<Object>();
+    private ArrayList<IsWidget> pooledViews;
 
     /**
      * Replaces the legacy activity that uses the old legacy EventBus.
@@ -142,6 +145,83 @@ abstract public class SlottedActivity extends AbstractActivity{
     public void onBackground() {
     }
 
+    /**
+     * Returns true if this Activity can be reused for a later navigation after onStop() is called, instead of
+     * the Place creating a new Activity.  Recyclable Activities must implement {@link #onRecycle()} to reset
+     * any state from the previous Place.  Defaults to false.
+     *
+     * The pool is keyed by Activity class, so it is only used for Places that return the class from
+     * {@link SlottedPlace#getActivityClass()}.
+     */
+    public boolean isRecyclable() {
+        return false;
+    }
+
+    /**
+     * Called when a stopped Activity is taken from the pool for a new navigation, before init() and start().
+     * This should reset any state left from the previous Place.
+     */
+    public void onRecycle() {
+    }
+
+    /**
+     * Called by the ActiveSlot to reset the Slotted state before the Activity is reused.
+     */
+    protected void recycle() {
+        loadingLabels.clear();
+        onRecycle();
+    }
+
+    /**
+     * Gets a view released by an earlier Activity in the same Slot, which is returned to the Slot's pool when
+     * this Activity stops.  The view keeps the state from the previous Activity, so it should be reset before
+     * it is displayed.
+     *
+     * <pre>
+     * MyView view = getPooledView(MyView.class);
+     * if (view == null) {
+     *     view = poolView(new MyView());
+     * }
+     * </pre>
+     *
+     * @param viewClass The class of the view.
+     * @return The view, or null if the pool is empty.
+     */
+    protected <V extends IsWidget> V getPooledView(Class<V> viewClass) {
+        V view = activeSlot.getSlot().takeView(viewClass);
+        if (view != null) {
+            poolView(view);
+        }
+        return view;
+    }
+
+    /**
+     * Marks a view to be returned to the Slot's pool when this Activity stops.
+     *
+     * @param view The view created by this Activity.
+     * @return The passed view.
+     * @see #getPooledView(Class)
+     */
+    protected <V extends IsWidget> V poolView(V view) {
+        if (pooledViews == null) {
+            pooledViews = new ArrayList<IsWidget>(1);
+        }
+        pooledViews.add(view);
+        return view;
+    }
+
+    /**
+     * Called by the ActiveSlot after the Activity stops, to return the pooled views to the Slot.
+     */
+    protected void releasePooledViews(Slot slot) {
+        if (pooledViews != null) {
+            for (IsWidget view: pooledViews) {
+                slot.releaseView(view);
+            }
+            pooledViews.clear();
+        }
+    }
+
     /**
      * Activates the Delayed Loading if called inside the {@link #start(AcceptsOneWidget)} method.  If called
      * outside the start(), then a LoadingEvent is sent, but Slotted lifecycle is unaffected.
@@ -19,13 +19,18 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import com.google.gwt.activity.shared.Activity;
 import com.google.gwt.activity.shared.ActivityMapper;
+import com.google.gwt.animation.client.AnimationScheduler;
+import com.google.gwt.animation.client.AnimationScheduler.AnimationCallback;
 import com.google.gwt.core.client.Callback;
 import com.google.gwt.core.client.GWT;
 import com.google.gwt.dom.client.Document;
@@ -38,6 +43,7 @@ import com.google.gwt.place.shared.PlaceHistoryMapper;
 import com.google.gwt.user.client.Event;
 import com.google.gwt.user.client.Event.NativePreviewEvent;
 import com.google.gwt.user.client.History;
+import com.google.gwt.user.client.Timer;
 import com.google.gwt.user.client.Window;
 import com.google.gwt.user.client.Window.ClosingEvent;
 import com.google.gwt.user.client.Window.ClosingHandler;
@@ -107,24 +113,46 @@ public class SlottedController {
     private final HistoryMapper historyMapper;
     private ActivityMapper legacyActivityMapper;
     private ActivityCache activityCache = new ActivityCache();
-    protected HashMap<Class, CodeSplitMapper> codeSplitMap = new HashMap<Class, CodeSplitMapper>();
+    protected HashMap<Class, CodeSplitMapper> codeSplitMap = new LinkedHashMap<Class, CodeSplitMapper>();
+    private CodeSplitPreloader codeSplitPreloader = new CodeSplitPreloader(this);
 
     private boolean processingGoTo;
     private boolean processingSync;
     private boolean tokenDone;
     private SlottedPlace mainGoToPlace;
-    protected List<Callback<Activity, Throwable>> asyncActivities = new LinkedList<Callback<Activity, Throwable>>();
+    private int navigationGeneration;
+    private int pendingAsyncActivities;
+    private ArrayList<AbortableCallback<?, ?>> asyncActivities = new ArrayList<AbortableCallback<?, ?>>();
     private SlottedPlace nextGoToPlace;
     @SuppressWarnings("FieldCanBeLocal")
     private SlottedPlace[] nextGoToNonDefaultPlaces;
     @SuppressWarnings("FieldCanBeLocal")
     private boolean nextGoToReloadAll;
+    private boolean coalesceNavigation = false;
+    private boolean fireUnchangedNewPlaces = false;
+    private boolean navigationScheduled;
+    private int coalescedNavigationCount;
+    private int droppedNavigationCount;
+    private NavigationTrace.Sampler navigationTraceSampler;
+    private BackgroundEvictionPolicy backgroundEvictionPolicy;
+    private int backgroundDomBudget;
+    private Timer statisticsTimer;
+    private boolean warmPrefetchedActivities = false;
+    private HashSet<CodeSplitMapper> prefetchingMappers = new HashSet<CodeSplitMapper>();
+    private HashSet<Class> legacyMappedPlaces = new HashSet<Class>();
+    private SlottedPlace prefetchedPlace;
+    private Activity prefetchedActivity;
+    private NavigationTrace currentTrace;
+    private NavigationTrace.Phase pendingTokenParse;
+    private HashMap<Class<? extends SlottedPlace>, NavigationHistogram> navigationHistograms =
+            new HashMap<Class<? extends SlottedPlace>, NavigationHistogram>();
     private List<SlottedPlace> currentHierarchyList;
     private List<SlottedPlace> possibleParentPlaces;
     private final Delegate delegate;
     private boolean reloadAll = false;
     private boolean useExistingChildren = false;
     private ActiveSlot root;
+    private HashMap<Slot, List<ActiveSlot>> activeSlotIndex = new HashMap<Slot, List<ActiveSlot>>();
     private PlaceParameters currentParameters;
     private NavigationOverride navigationOverride;
     private String goToList;
@@ -280,6 +308,151 @@ public class SlottedController {
         return codeSplitMap.get(codeSplitMapperClass);
     }
 
+    /**
+     * Sets if the registered CodeSplitMappers should be loaded in the background (defaults false).  Loading
+     * starts after the first Places are displayed, and fragments are loaded one at a time while no navigation
+     * is being processed.  The order and delay can be configured with {@link #getCodeSplitPreloader()}.
+     *
+     * @param preloadCodeSplits True to load the CodeSplitMapper fragments before they are navigated to.
+     */
+    public void setPreloadCodeSplits(boolean preloadCodeSplits) {
+        codeSplitPreloader.setEnabled(preloadCodeSplits);
+        if (preloadCodeSplits && currentToken != null) {
+            codeSplitPreloader.navigationFinished();
+        }
+    }
+
+    public boolean isPreloadCodeSplits() {
+        return codeSplitPreloader.isEnabled();
+    }
+
+    /**
+     * Gets the preloader used when {@link #setPreloadCodeSplits(boolean)} is set, so the priority order
+     * and idle delay can be configured.
+     */
+    public CodeSplitPreloader getCodeSplitPreloader() {
+        return codeSplitPreloader;
+    }
+
+    /**
+     * Sets if {@link #prefetch(SlottedPlace)} should also create the Activity for the Place, so it
+     * can be used if the Place is navigated to next.  Only the most recently prefetched Activity is kept.
+     * Places that are displayed, have a cached or recycled Activity, or get their Activity from the
+     * LegacyActivityMapper aren't warmed.  Defaults to false, which only loads the CodeSplitMapper fragment.
+     *
+     * @param warmPrefetchedActivities True to create the Activity during prefetch.
+     */
+    public void setWarmPrefetchedActivities(boolean warmPrefetchedActivities) {
+        this.warmPrefetchedActivities = warmPrefetchedActivities;
+        if (!warmPrefetchedActivities) {
+            prefetchedPlace = null;
+            prefetchedActivity = null;
+        }
+    }
+
+    public boolean isWarmPrefetchedActivities() {
+        return warmPrefetchedActivities;
+    }
+
+    /**
+     * Starts loading the code needed to display the Place, before it is navigated to.  This loads the
+     * Place's CodeSplitMapper fragment if it isn't loaded, and if {@link #setWarmPrefetchedActivities(boolean)}
+     * is set, creates the Place's Activity.  This is called by the Slotted navigation widgets on hover,
+     * focus and touch start when prefetch is enabled.
+     *
+     * @param place The Place that will likely be navigated to.
+     */
+    public void prefetch(final SlottedPlace place) {
+        CodeSplitMapper codeSplitMapper = null;
+        Class codeSplitClass = historyMapper.getCodeSplitMapper(place);
+        if (codeSplitClass != null) {
+            codeSplitMapper = codeSplitMap.get(codeSplitClass);
+            if (codeSplitMapper == null) {
+                return;
+            }
+        }
+
+        if (warmPrefetchedActivities) {
+            if (place.equals(prefetchedPlace) || processingGoTo || !shouldWarm(place)) {
+                return;
+            }
+            prefetchedPlace = place;
+            prefetchedActivity = null;
+            Callback<Activity, Throwable> callback = new Callback<Activity, Throwable>() {
+                @Override public void onSuccess(Activity result) {
+                    if (result == null) {
+                        // The Activity comes from the LegacyActivityMapper, which isn't used for prefetch.
+                        legacyMappedPlaces.add(place.getClass());
+                    }
+                    if (place == prefetchedPlace) {
+                        prefetchedActivity = result;
+                        if (result == null) {
+                            prefetchedPlace = null;
+                        }
+                    }
+                }
+
+                @Override public void onFailure(Throwable reason) {
+                    if (place == prefetchedPlace) {
+                        prefetchedPlace = null;
+                    }
+                    log.log(Level.INFO, "Prefetch failed for " + place, reason);
+                }
+            };
+            if (codeSplitMapper != null) {
+                codeSplitMapper.get(place, callback);
+            } else {
+                place.getActivity(callback);
+            }
+
+        } else if (codeSplitMapper != null && !codeSplitMapper.isLoaded() && prefetchingMappers.add(codeSplitMapper)) {
+            final CodeSplitMapper loadingMapper = codeSplitMapper;
+            codeSplitMapper.load(new Callback<Activity, Throwable>() {
+                @Override public void onSuccess(Activity result) {
+                    prefetchingMappers.remove(loadingMapper);
+                }
+
+                @Override public void onFailure(Throwable reason) {
+                    prefetchingMappers.remove(loadingMapper);
+                    log.log(Level.INFO, "Prefetch failed for " + place, reason);
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns false if the Activity created for the Place wouldn't be used, because the Place is displayed in
+     * its Slot, the ActivityCache has a backgrounded or recycled Activity for it, or its Activity comes from
+     * the LegacyActivityMapper.
+     */
+    private boolean shouldWarm(SlottedPlace place) {
+        if (place instanceof WrappedPlace || legacyMappedPlaces.contains(place.getClass())) {
+            return false;
+        }
+        ActiveSlot activeSlot = getActiveSlot(place.getParentSlot());
+        if (activeSlot != null && place.equals(activeSlot.getPlace())) {
+            return false;
+        }
+        return !activityCache.hasActivity(place);
+    }
+
+    /**
+     * Returns the Activity created by {@link #prefetch(SlottedPlace)} if it was for the passed Place.
+     * The Activity is only returned once.
+     *
+     * @param place The Place whose Activity is about to be started.
+     * @return The prefetched Activity, or null.
+     */
+    protected Activity takePrefetchedActivity(SlottedPlace place) {
+        if (prefetchedActivity != null && place.equals(prefetchedPlace)) {
+            Activity activity = prefetchedActivity;
+            prefetchedPlace = null;
+            prefetchedActivity = null;
+            return activity;
+        }
+        return null;
+    }
+
     /**
      * Sets the SlottedPlace that should be displayed when there is an error parsing the History
      * token.  If this is not set, the default place is used instead.
@@ -310,6 +483,8 @@ public class SlottedController {
         //noinspection deprecation
         rootSlot.setDisplay(display);
         root = new ActiveSlot(null, rootSlot, eventBus, this);
+        activeSlotIndex.clear();
+        addActiveSlot(root);
 
         if (isMainController) {
             History.fireCurrentHistoryState();
@@ -345,6 +520,188 @@ public class SlottedController {
         this.useExistingChildren = useExistingChildren;
     }
 
+    /**
+     * Sets coalesceNavigation (defaults false).  If coalesceNavigation is true, goTo() requests are
+     * processed at the next animation frame, and only the last request made before the frame is
+     * navigated to.  A request that arrives while an earlier navigation is waiting on async
+     * Activities cancels that navigation instead of waiting for it to finish.
+     *
+     * If false, goTo() is processed immediately, and requests made during a navigation are
+     * processed after it completes.
+     *
+     * @param coalesceNavigation The new value to use on goTo() calls and URL changes.
+     */
+    public void setCoalesceNavigation(boolean coalesceNavigation) {
+        this.coalesceNavigation = coalesceNavigation;
+    }
+
+    /**
+     * Sets fireUnchangedNewPlaces (defaults false).  If false, a navigation that ends with the same
+     * History token as the current one doesn't fire another {@link NewPlacesEvent}, because the
+     * displayed Places and parameters are the same.
+     *
+     * @param fireUnchangedNewPlaces True to fire NewPlacesEvent after every navigation.
+     */
+    public void setFireUnchangedNewPlaces(boolean fireUnchangedNewPlaces) {
+        this.fireUnchangedNewPlaces = fireUnchangedNewPlaces;
+    }
+
+    public boolean isFireUnchangedNewPlaces() {
+        return fireUnchangedNewPlaces;
+    }
+
+    /**
+     * Returns the number of goTo() requests that were replaced by a later request before they
+     * were processed.
+     */
+    public int getCoalescedNavigationCount() {
+        return coalescedNavigationCount;
+    }
+
+    /**
+     * Returns the number of navigations that were cancelled while waiting on async Activities,
+     * because a later request superseded them.
+     *
+     * @see #setCoalesceNavigation(boolean)
+     */
+    public int getDroppedNavigationCount() {
+        return droppedNavigationCount;
+    }
+
+    /**
+     * Sets the policy that decides which backgrounded Activities are stopped after each navigation.  By default
+     * backgrounded Activities are kept until their parent Place is no longer displayed.  A Slot can override this
+     * with {@link Slot#setBackgroundEvictionPolicy(BackgroundEvictionPolicy)}.
+     *
+     * @param backgroundEvictionPolicy The policy, for example a {@link LruEvictionPolicy}, or null for no limit.
+     */
+    public void setBackgroundEvictionPolicy(BackgroundEvictionPolicy backgroundEvictionPolicy) {
+        this.backgroundEvictionPolicy = backgroundEvictionPolicy;
+    }
+
+    public BackgroundEvictionPolicy getBackgroundEvictionPolicy() {
+        return backgroundEvictionPolicy;
+    }
+
+    /**
+     * Sets the number of stopped Activities kept for reuse per Activity class.  Only SlottedActivities that return
+     * true from {@link SlottedActivity#isRecyclable()} are kept.  Defaults to 2.
+     *
+     * @param activityPoolSize The pool size, or 0 to disable recycling.
+     */
+    public void setActivityPoolSize(int activityPoolSize) {
+        activityCache.setPoolSize(activityPoolSize);
+    }
+
+    public int getActivityPoolSize() {
+        return activityCache.getPoolSize();
+    }
+
+    /**
+     * Gets a snapshot of the Activity cache statistics, including the cache hits and misses, how often
+     * backgrounded Activities were shown again, evictions, and the backgrounded Activities per Place class.
+     */
+    public ActivityCacheStatistics getActivityCacheStatistics() {
+        return activityCache.getStatistics();
+    }
+
+    /**
+     * Resets the Activity cache counters to 0.
+     */
+    public void resetActivityCacheStatistics() {
+        activityCache.resetStatistics();
+    }
+
+    /**
+     * Sets how often an {@link ActivityCacheStatisticsEvent} is fired on the EventBus with a snapshot of the
+     * Activity cache statistics.  Disabled by default.
+     *
+     * @param intervalMillis The interval in milliseconds, or 0 to stop publishing.
+     */
+    public void setActivityCacheStatisticsInterval(int intervalMillis) {
+        if (statisticsTimer != null) {
+            statisticsTimer.cancel();
+            statisticsTimer = null;
+        }
+        if (intervalMillis > 0) {
+            statisticsTimer = new Timer() {
+                @Override public void run() {
+                    eventBus.fireEventFromSource(new ActivityCacheStatisticsEvent(getActivityCacheStatistics(),
+                            SlottedController.this), SlottedController.this);
+                }
+            };
+            statisticsTimer.scheduleRepeating(intervalMillis);
+        }
+    }
+
+    /**
+     * Sets the budget for the hidden widgets of backgrounded Activities, measured in DOM elements.  The elements
+     * of each widget are counted when it is hidden.  After each navigation, if the total is over the budget, the
+     * heaviest and least recently used backgrounded Activities are stopped until it is within the budget.  This
+     * is applied after the {@link BackgroundEvictionPolicy}.
+     *
+     * @param backgroundDomBudget The maximum number of hidden elements, or 0 for no limit.
+     */
+    public void setBackgroundDomBudget(int backgroundDomBudget) {
+        this.backgroundDomBudget = backgroundDomBudget;
+    }
+
+    public int getBackgroundDomBudget() {
+        return backgroundDomBudget;
+    }
+
+    /**
+     * Stops the backgrounded Activities selected by the eviction policies and DOM budget, and removes their widgets.
+     */
+    private void evictBackgroundActivities() {
+        double now = System.currentTimeMillis();
+        List<ActivityCache.Entry> evicted = activityCache.evictBackgrounded(backgroundEvictionPolicy, now);
+        if (backgroundDomBudget > 0) {
+            evicted = new ArrayList<ActivityCache.Entry>(evicted);
+            evicted.addAll(activityCache.evictOverBudget(backgroundDomBudget, now));
+        }
+        for (ActivityCache.Entry entry: evicted) {
+            log.info("Evicting backgrounded Activity: " + entry.place);
+            try {
+                stopBackgroundActivity(entry);
+            } catch (Exception e) {
+                log.log(Level.WARNING, "Problem stopping evicted Activity: " + entry.place, e);
+            }
+        }
+    }
+
+    /**
+     * Stops the backgrounded Activities that are cached while the Place is displayed, including the Activities
+     * cached under them.
+     *
+     * @param place The Place whose {@link CacheActivities} should be stopped.
+     */
+    protected void stopBackgroundActivities(SlottedPlace place) {
+        List<Class<? extends SlottedPlace>> placesOfActivitiesToCache = historyMapper.getPlacesOfActivitiesToCache(place);
+        for (ActivityCache.Entry entry: activityCache.getBackgroundedActivities(placesOfActivitiesToCache)) {
+            stopBackgroundActivity(entry);
+        }
+    }
+
+    /**
+     * Stops a backgrounded Activity and the Activities cached under it, removing their hidden widgets and the
+     * handlers they registered on their Slot's EventBus, so nothing keeps them reachable.
+     */
+    private void stopBackgroundActivity(ActivityCache.Entry entry) {
+        activityCache.removeBackgrounded(entry);
+        stopBackgroundActivities(entry.place);
+        if (entry.getSlot() != null) {
+            entry.getSlot().removeBackgroundWidget(entry.activity);
+        }
+        try {
+            entry.activity.onStop();
+        } finally {
+            if (entry.getEventBus() != null) {
+                entry.getEventBus().removeHandlers();
+            }
+        }
+    }
+
     /**
      * Allows for a NavigationOverride object to evaluate the Places before Slotted creates the Activities.
      *
@@ -472,7 +829,7 @@ public class SlottedController {
 
 	    if (root == null) {
 		    String token = historyMapper.createToken(newPlace, nonDefaultPlaces);
-		    History.newItem(token, false);
+		    HistoryMapper.newHistoryItem(token);
 	    } else {
 		    _goTo(newPlace, nonDefaultPlaces, reloadAll);
 	    }
@@ -480,7 +837,6 @@ public class SlottedController {
 
 	private void _goTo(SlottedPlace newPlace, SlottedPlace[] nonDefaultPlaces, boolean reloadAll) {
         try {
-            Exception maybeGoToException = null;
             if (openNewTab) {
                 Window.open(createUrl(newPlace), "_blank", "");
                 openNewTab = false;
@@ -491,60 +847,184 @@ public class SlottedController {
                 openNewWindow = false;
                 openNewTab = false;
 
+            } else if (processingGoTo || coalesceNavigation) {
+                queueGoTo(newPlace, nonDefaultPlaces, reloadAll);
+
             } else {
-                if (processingGoTo) {
-                    nextGoToPlace = newPlace;
-                    nextGoToNonDefaultPlaces = nonDefaultPlaces;
-                    nextGoToReloadAll = reloadAll;
+                processGoTo(newPlace, nonDefaultPlaces, reloadAll);
+            }
+        } catch (Exception e) {
+            handleGoToException(e);
+        }
+    }
 
-                } else {
-                    processingGoTo = true;
-                    processingSync = true;
-                    mainGoToPlace = newPlace;
-                    tokenDone = false;
-                    nextGoToPlace = null;
-                    nextGoToNonDefaultPlaces = null;
-                    nextGoToReloadAll = false;
-
-                    List<SlottedPlace> nonDefaultPlacesList = Arrays.asList(nonDefaultPlaces);
-                    indexMultiParentPlaces(newPlace, nonDefaultPlacesList);
-                    List<SlottedPlace> hierarchyList = createHierarchyList(newPlace, nonDefaultPlacesList);
-                    currentParameters = historyMapper.extractParameters(hierarchyList);
-
-                    if (navigationOverride != null) {
-                        List<SlottedPlace> override = navigationOverride.checkOverrides(this, hierarchyList);
-                        newPlace = override.get(0);
-                        hierarchyList = createHierarchyList(newPlace, Arrays.asList(nonDefaultPlaces));
-                        currentParameters = historyMapper.extractParameters(hierarchyList);
+    /**
+     * Saves the request to be processed after the current navigation, or at the next animation frame if
+     * coalesceNavigation is set.  Only the last queued request is kept.
+     */
+    private void queueGoTo(SlottedPlace newPlace, SlottedPlace[] nonDefaultPlaces, boolean reloadAll) {
+        if (nextGoToPlace != null) {
+            coalescedNavigationCount++;
+        }
+        nextGoToPlace = newPlace;
+        nextGoToNonDefaultPlaces = nonDefaultPlaces;
+        nextGoToReloadAll = reloadAll;
 
-                    }
+        if (coalesceNavigation) {
+            if (processingGoTo && !processingSync) {
+                cancelAsyncGoTo();
+            }
+            if (!processingGoTo) {
+                scheduleQueuedGoTo();
+            }
+        }
+    }
 
-                    ArrayList<String> warnings = new ArrayList<String>();
-                    try {
-                        root.maybeGoTo(hierarchyList, reloadAll, warnings);
-                    } catch (Exception e) {
-                        maybeGoToException = e;
+    private void scheduleQueuedGoTo() {
+        if (!navigationScheduled) {
+            navigationScheduled = true;
+            AnimationScheduler.get().requestAnimationFrame(new AnimationCallback() {
+                @Override public void execute(double timestamp) {
+                    navigationScheduled = false;
+                    if (nextGoToPlace != null && !processingGoTo) {
+                        try {
+                            processGoTo(nextGoToPlace, nextGoToNonDefaultPlaces, nextGoToReloadAll);
+                        } catch (Exception e) {
+                            handleGoToException(e);
+                        }
                     }
+                }
+            });
+        }
+    }
 
-                    boolean constructedCleanup = false;
-                    if (warnings.isEmpty() || delegate.confirm(warnings.toArray(new String[warnings.size()]))) {
-                        currentHierarchyList = hierarchyList;
-                        root.constructStopStart(currentParameters, hierarchyList, reloadAll);
-                        constructedCleanup = true;
-                    }
+    /**
+     * Abandons the current navigation, which has finished the synchronous processing and is only waiting
+     * on async Activities.  Late Activity callbacks for the abandoned navigation are ignored.
+     */
+    private void cancelAsyncGoTo() {
+        log.info("Dropping navigation waiting on async Activities: " + mainGoToPlace);
+        abortAsyncActivities();
+        processingGoTo = false;
+        droppedNavigationCount++;
+    }
 
-                    processingSync = false;
-                    asyncGoToCleanup(constructedCleanup);
-                }
-            }
-            if (maybeGoToException != null) {
-                throw maybeGoToException;
+    private void processGoTo(SlottedPlace newPlace, SlottedPlace[] nonDefaultPlaces, boolean reloadAll)
+            throws Exception
+    {
+        Exception maybeGoToException = null;
+        processingGoTo = true;
+        processingSync = true;
+        mainGoToPlace = newPlace;
+        tokenDone = false;
+        nextGoToPlace = null;
+        nextGoToNonDefaultPlaces = null;
+        nextGoToReloadAll = false;
+        codeSplitPreloader.navigationStarted();
+        startTrace(newPlace);
+
+        double phaseStart = NavigationTrace.now();
+        List<SlottedPlace> nonDefaultPlacesList = Arrays.asList(nonDefaultPlaces);
+        indexMultiParentPlaces(newPlace, nonDefaultPlacesList);
+        List<SlottedPlace> hierarchyList = createHierarchyList(newPlace, nonDefaultPlacesList);
+        if (loadPlaceRegistry(hierarchyList, newPlace, nonDefaultPlaces, reloadAll)) {
+            return;
+        }
+        currentParameters = historyMapper.extractParameters(hierarchyList);
+        tracePhase(NavigationTrace.CREATE_HIERARCHY, null, phaseStart);
+
+        if (navigationOverride != null) {
+            phaseStart = NavigationTrace.now();
+            List<SlottedPlace> override = navigationOverride.checkOverrides(this, hierarchyList);
+            newPlace = override.get(0);
+            hierarchyList = createHierarchyList(newPlace, Arrays.asList(nonDefaultPlaces));
+            currentParameters = historyMapper.extractParameters(hierarchyList);
+            tracePhase(NavigationTrace.NAVIGATION_OVERRIDE, null, phaseStart);
+            if (currentTrace != null) {
+                currentTrace.setPlace(newPlace);
             }
+        }
+
+        phaseStart = NavigationTrace.now();
+        NavigationDiff diff = new NavigationDiff(root, hierarchyList, reloadAll);
+        ArrayList<String> warnings = new ArrayList<String>();
+        try {
+            root.maybeGoTo(diff, reloadAll, warnings);
         } catch (Exception e) {
-            handleGoToException(e);
+            maybeGoToException = e;
+        }
+        tracePhase(NavigationTrace.MAYBE_GO_TO, null, phaseStart);
+
+        boolean constructedCleanup = false;
+        if (warnings.isEmpty() || delegate.confirm(warnings.toArray(new String[warnings.size()]))) {
+            currentHierarchyList = hierarchyList;
+            phaseStart = NavigationTrace.now();
+            root.constructStopStart(currentParameters, diff, reloadAll);
+            tracePhase(NavigationTrace.CONSTRUCT_STOP_START, null, phaseStart);
+            constructedCleanup = true;
+        }
+
+        processingSync = false;
+        asyncGoToCleanup(constructedCleanup);
+
+        if (maybeGoToException != null) {
+            throw maybeGoToException;
         }
     }
 
+    /**
+     * Loads the fragment of a {@link CodeSplitRegistry} that registers one of the Places, because the
+     * Places' tokenizers are needed to navigate.  The navigation is started again after the fragment loads,
+     * unless a newer goTo() was requested while loading.  If the navigation was dropped while loading, the
+     * late callback is ignored.
+     *
+     * @return True if a fragment is being loaded, and the navigation should stop.
+     */
+    private boolean loadPlaceRegistry(List<SlottedPlace> hierarchyList, final SlottedPlace newPlace,
+            final SlottedPlace[] nonDefaultPlaces, final boolean reloadAll)
+    {
+        Class<? extends CodeSplitMapper> mapperClass = historyMapper.getUnloadedRegistry(hierarchyList);
+        if (mapperClass == null) {
+            return false;
+        }
+        CodeSplitMapper mapper = getCodeSplitMapper(mapperClass);
+        if (mapper == null) {
+            throw new IllegalStateException("CodeSplitMapper not registered:" + mapperClass.getName());
+        }
+
+        final int generation = navigationGeneration;
+        processingSync = false;
+        mapper.load(new Callback<Activity, Throwable>() {
+            @Override public void onSuccess(Activity result) {
+                if (generation != navigationGeneration) {
+                    return;
+                }
+                processingGoTo = false;
+                finishTrace(false);
+                if (nextGoToPlace != null) {
+                    if (coalesceNavigation) {
+                        scheduleQueuedGoTo();
+                    } else {
+                        goTo(nextGoToPlace, nextGoToNonDefaultPlaces, nextGoToReloadAll);
+                    }
+                } else {
+                    goTo(newPlace, nonDefaultPlaces, reloadAll);
+                }
+            }
+
+            @Override public void onFailure(Throwable reason) {
+                if (generation != navigationGeneration) {
+                    log.log(Level.INFO, "Ignoring failed Place registry load for dropped navigation", reason);
+                    return;
+                }
+                finishTrace(false);
+                codeSplitPreloader.navigationFinished();
+                handleGoToException(reason);
+            }
+        });
+        return true;
+    }
+
     /**
      * Handles exceptions for GoTo for synchronous and asynchronous calls.
      *
@@ -552,7 +1032,7 @@ public class SlottedController {
      */
     protected void handleGoToException(Throwable e) {
         processingGoTo = false;
-        asyncActivities.clear();
+        abortAsyncActivities();
         log.log(Level.SEVERE, "Problem while goTo:" + goToList, e);
         SlottedErrorPlace errorPlace = historyMapper.getErrorPlace();
         if (errorPlace != null && !(mainGoToPlace instanceof SlottedErrorPlace)) {
@@ -572,16 +1052,25 @@ public class SlottedController {
      * @param constructedCleanup True when new Activities were created.
      */
     protected void asyncGoToCleanup(boolean constructedCleanup) {
-        if (!processingSync && asyncActivities.isEmpty()) {
+        if (!processingSync && pendingAsyncActivities == 0) {
+            asyncActivities.clear();
             if (constructedCleanup) {
                 LinkedList<SlottedPlace> places = new LinkedList<SlottedPlace>();
                 fillPlaces(root, places);
 
-                referringToken = currentToken;
-                currentToken = historyMapper.createToken(this);
+                String token = historyMapper.createToken(this);
+                boolean tokenChanged = !token.equals(currentToken);
+                if (tokenChanged) {
+                    referringToken = currentToken;
+                    currentToken = token;
+                }
                 tokenDone = true;
                 activityCache.clearUnused();
-                eventBus.fireEventFromSource(new NewPlacesEvent(places, this), SlottedController.this);
+                evictBackgroundActivities();
+                if (tokenChanged || fireUnchangedNewPlaces) {
+                    eventBus.fireEventFromSource(new NewPlacesEvent(places, this), SlottedController.this);
+                }
+                codeSplitPreloader.navigationFinished();
             }
 
             processingGoTo = false;
@@ -590,10 +1079,148 @@ public class SlottedController {
                 eventBus.fireEventFromSource(new LoadingEvent(true), SlottedController.this);
             }
 
+            finishTrace(constructedCleanup);
+
             if (nextGoToPlace != null) {
-                goTo(nextGoToPlace, nextGoToNonDefaultPlaces, nextGoToReloadAll);
+                if (coalesceNavigation) {
+                    scheduleQueuedGoTo();
+                } else {
+                    goTo(nextGoToPlace, nextGoToNonDefaultPlaces, nextGoToReloadAll);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the generation of the current navigation.  The generation changes when a navigation is
+     * dropped or fails, so Activity callbacks created before then can be recognized as stale.
+     */
+    protected int getNavigationGeneration() {
+        return navigationGeneration;
+    }
+
+    /**
+     * Registers an Activity request that the current navigation must wait on.
+     *
+     * @param callback The callback that receives the Activity, which is aborted if the navigation is dropped.
+     */
+    protected void addAsyncActivity(AbortableCallback<?, ?> callback) {
+        pendingAsyncActivities++;
+        asyncActivities.add(callback);
+    }
+
+    /**
+     * Called when an Activity request registered by {@link #addAsyncActivity(AbortableCallback)} completes.
+     * The caller must have checked that the request belongs to the current navigation generation, so only a
+     * count is kept instead of searching the list.
+     *
+     * @param callback The callback that received the Activity.
+     */
+    protected void removeAsyncActivity(AbortableCallback<?, ?> callback) {
+        pendingAsyncActivities--;
+    }
+
+    /**
+     * Gets the Activity requests made by the current navigation, including the ones that have completed.  The
+     * list can't be changed, use {@link #addAsyncActivity(AbortableCallback)} and
+     * {@link #removeAsyncActivity(AbortableCallback)} instead.
+     */
+    protected List<AbortableCallback<?, ?>> getAsyncActivities() {
+        return Collections.unmodifiableList(asyncActivities);
+    }
+
+    /**
+     * Starts a new navigation generation and aborts all the outstanding Activity requests.
+     */
+    protected void abortAsyncActivities() {
+        navigationGeneration++;
+        currentTrace = null;
+        pendingAsyncActivities = 0;
+        ArrayList<AbortableCallback<?, ?>> aborted = asyncActivities;
+        asyncActivities = new ArrayList<AbortableCallback<?, ?>>();
+        for (AbortableCallback<?, ?> callback: aborted) {
+            callback.abort();
+        }
+    }
+
+    /**
+     * Sets the Sampler that decides which navigations are traced.  Traced navigations record the time spent
+     * in each phase of goTo(), are added to the per Place class histograms, and are published with a
+     * {@link NavigationTraceEvent} on the EventBus.  Tracing is disabled by default.
+     *
+     * @param sampler The sampler, {@link NavigationTrace#SAMPLE_ALL} to trace everything, or null to disable tracing.
+     */
+    public void setNavigationTraceSampler(NavigationTrace.Sampler sampler) {
+        this.navigationTraceSampler = sampler;
+        if (sampler == null) {
+            currentTrace = null;
+        }
+    }
+
+    /**
+     * Gets the duration histogram of the traced navigations to the passed Place class.
+     *
+     * @param placeClass The Place class that was navigated to, after any {@link NavigationOverride}.
+     * @return The histogram, or null if no navigation to the class has been traced.
+     */
+    public NavigationHistogram getNavigationHistogram(Class<? extends SlottedPlace> placeClass) {
+        return navigationHistograms.get(placeClass);
+    }
+
+    /**
+     * Gets the duration histograms of all the traced navigations, keyed by Place class.
+     */
+    public Map<Class<? extends SlottedPlace>, NavigationHistogram> getNavigationHistograms() {
+        return Collections.unmodifiableMap(navigationHistograms);
+    }
+
+    /**
+     * Gets the trace for the navigation being processed, or null if it isn't being traced.
+     */
+    protected NavigationTrace getNavigationTrace() {
+        return currentTrace;
+    }
+
+    /**
+     * Records the time spent parsing the token for the next navigation.
+     */
+    protected void setTokenParseTiming(String token, double startTime, double duration) {
+        if (navigationTraceSampler != null) {
+            pendingTokenParse = new NavigationTrace.Phase(NavigationTrace.TOKEN_PARSE, token, startTime, duration);
+        }
+    }
+
+    private void startTrace(SlottedPlace newPlace) {
+        currentTrace = null;
+        if (navigationTraceSampler != null && navigationTraceSampler.sample(newPlace)) {
+            currentTrace = new NavigationTrace(newPlace);
+            if (pendingTokenParse != null) {
+                currentTrace.addPhase(pendingTokenParse);
             }
         }
+        pendingTokenParse = null;
+    }
+
+    private void tracePhase(String name, String detail, double phaseStart) {
+        if (currentTrace != null) {
+            currentTrace.addPhase(name, detail, phaseStart);
+        }
+    }
+
+    private void finishTrace(boolean constructed) {
+        NavigationTrace trace = currentTrace;
+        currentTrace = null;
+        if (trace != null && constructed) {
+            trace.finish();
+            Class<? extends SlottedPlace> placeClass = trace.getPlace().getClass();
+            NavigationHistogram histogram = navigationHistograms.get(placeClass);
+            if (histogram == null) {
+                histogram = new NavigationHistogram();
+                navigationHistograms.put(placeClass, histogram);
+            }
+            histogram.add(trace.getTotalDuration());
+            eventBus.fireEventFromSource(new NavigationTraceEvent(trace, this), SlottedController.this);
+        }
     }
 
     public SlottedDialogController createSlottedDialog(PopupPanel popupPanel, AcceptsOneWidget display) {
@@ -672,7 +1299,13 @@ public class SlottedController {
             }
         }
 
-        Slot[] slots = parentPlace.getChildSlots();
+        Slot[] slots;
+        PlaceHierarchyTemplate template = historyMapper.getHierarchyTemplate(parentPlace.getClass());
+        if (template != null) {
+            slots = template.getChildSlots();
+        } else {
+            slots = parentPlace.getChildSlots();
+        }
         if (slots != null) {
             for (Slot childSlot: slots) {
                 if (excludeSlot == null || !excludeSlot.equals(childSlot)) {
@@ -681,12 +1314,38 @@ public class SlottedController {
                         ((MultiParentPlace) place).setParentSlotIndex(childSlot);
                     }
                     hierarchyList.add(place);
-                    addChildPlaces(place, nonDefaults, useExisting, null, hierarchyList);
+                    if (!useExisting && place == childSlot.getDefaultPlace()) {
+                        addDefaultChildPlaces(place, nonDefaults, hierarchyList);
+                    } else {
+                        addChildPlaces(place, nonDefaults, useExisting, null, hierarchyList);
+                    }
                 }
             }
         }
     }
 
+    /**
+     * Adds the children of a default Place from the Place's template, unless one of the nonDefaults replaces a
+     * Place below it, in which case the children are added by walking the Slots.
+     */
+    private void addDefaultChildPlaces(SlottedPlace defaultPlace, List<SlottedPlace> nonDefaults,
+            List<SlottedPlace> hierarchyList)
+    {
+        PlaceHierarchyTemplate template = historyMapper.getHierarchyTemplate(defaultPlace.getClass());
+        if (template == null || template.isOverlaid(nonDefaults)) {
+            addChildPlaces(defaultPlace, nonDefaults, false, null, hierarchyList);
+        } else {
+            SlottedPlace[] places = template.getDefaultDescendants();
+            Slot[] slots = template.getDefaultDescendantSlots();
+            for (int i = 0; i < places.length; i++) {
+                if (places[i] instanceof MultiParentPlace) {
+                    ((MultiParentPlace) places[i]).setParentSlotIndex(slots[i]);
+                }
+                hierarchyList.add(places[i]);
+            }
+        }
+    }
+
     /**
      * Gets the SlottedPlace for the passed slot, by first checking the nonDefaults, then the existing ActiveSlots, and
      * finally the Slot's defaultChildPlace.
@@ -735,6 +1394,13 @@ public class SlottedController {
         }
     }
 
+    /**
+     * Returns true while a goTo() is being processed, including waiting on async Activities.
+     */
+    protected boolean isProcessingGoTo() {
+        return processingGoTo;
+    }
+
     protected boolean shouldStartActivity() {
         return nextGoToPlace == null;
     }
@@ -765,7 +1431,9 @@ public class SlottedController {
         if (!processingGoTo) {
             ActiveSlot blockingSlot = root.getFirstBlockingSlot();
             if (blockingSlot == null) {
+                double phaseStart = NavigationTrace.now();
                 root.showViews();
+                tracePhase(NavigationTrace.SHOW_VIEWS, null, phaseStart);
                 eventBus.fireEventFromSource(new LoadingEvent(false), SlottedController.this);
                 return true;
             } else if (blockingSlot.isLoading()) {
@@ -776,13 +1444,28 @@ public class SlottedController {
     }
 
     /**
-     * Clones the passed place by converting it to a token, and then parsing the token.  This means any data not tokenized
-     * will be lost in the cloning process.
+     * Clones the passed place.  If the Place uses a generated AutoTokenizer, the @TokenizerParameter and
+     * @GlobalParameter fields are copied directly, and the PlaceParameters are collected from the Place's default
+     * hierarchy like {@link #createToken(SlottedPlace, SlottedPlace...)} does.  Otherwise the Place is converted
+     * to a token, and then the token is parsed.  This means any data not tokenized will be lost in the cloning
+     * process.
      *
      * @param place The SlottedPlace to clone.
      * @return A new instance of the Place that can be changed without effecting existing hierarchy.
      */
+    @SuppressWarnings("unchecked")
     public <T extends SlottedPlace> T clonePlace(T place) {
+        AutoTokenizer tokenizer = historyMapper.getAutoTokenizer(place.getClass());
+        if (tokenizer instanceof GeneratedAutoTokenizer) {
+            T copy = (T) ((GeneratedAutoTokenizer) tokenizer).copy(place);
+            PlaceParameters placeParameters = new PlaceParameters();
+            for (SlottedPlace hierarchyPlace: createHierarchyList(place, Collections.<SlottedPlace>emptyList())) {
+                historyMapper.extractParameters(hierarchyPlace, placeParameters);
+            }
+            copy.setPlaceParameters(placeParameters);
+            return copy;
+        }
+
         String token = createToken(place);
         SlottedPlace[] places = historyMapper.parseToken(token);
         //noinspection unchecked
@@ -798,8 +1481,11 @@ public class SlottedController {
      */
     public void updateToken(SlottedPlace newPlace, SlottedPlace... nonDefaultPlaces) {
         String token = createToken(newPlace, nonDefaultPlaces);
+        if (token.equals(currentToken)) {
+            return;
+        }
         if (isMainController) {
-            History.newItem(token, false);
+            HistoryMapper.newHistoryItem(token);
         }
         referringToken = currentToken;
         currentToken = token;
@@ -932,17 +1618,10 @@ public class SlottedController {
      * @param slot The Slot object of the Place.
      * @return The Activity requested, or null if that type is not in the hierarchy.
      */
-    @SuppressWarnings("unchecked")
     public Activity getCurrentActivity(Slot slot) {
         Place place = getCurrentPlace(slot);
-        if (place != null  && place instanceof SlottedPlace) {
-            Class placeType = place.getClass();
-            List<Activity> activities = activityCache.get(placeType);
-            if (activities.isEmpty()) {
-                return null;
-            } else {
-                return activities.get(0);
-            }
+        if (place instanceof SlottedPlace) {
+            return activityCache.getFirst(((SlottedPlace) place).getClass());
         }
         return null;
     }
@@ -971,12 +1650,7 @@ public class SlottedController {
      */
     @SuppressWarnings("unchecked")
     public Activity getCurrentActivityByPlace(Class<? extends SlottedPlace> placeType) {
-        List<Activity> activities = activityCache.get(placeType);
-        if (activities.isEmpty()) {
-            return null;
-        } else {
-            return activities.get(0);
-        }
+        return activityCache.getFirst(placeType);
     }
 
     /**
@@ -1019,4 +1693,64 @@ public class SlottedController {
     protected ActivityCache getActivityCache() {
         return activityCache;
     }
+
+    /**
+     * Gets the ActiveSlot that is displaying the passed Slot.  Slots are matched with equals(), so if more than
+     * one ActiveSlot displays an equal Slot, the first one created is returned.
+     *
+     * @param slot The Slot to look up.
+     * @return The ActiveSlot, or null if the Slot isn't in the hierarchy.
+     */
+    protected ActiveSlot getActiveSlot(Slot slot) {
+        List<ActiveSlot> activeSlots = activeSlotIndex.get(slot);
+        if (activeSlots == null) {
+            return null;
+        }
+        return activeSlots.get(0);
+    }
+
+    /**
+     * Gets all the ActiveSlots that are displaying a Slot equal to the passed Slot.
+     *
+     * @param slot The Slot to look up.
+     * @return The ActiveSlots in the order they were created, or an empty list if the Slot isn't in the hierarchy.
+     */
+    protected List<ActiveSlot> getActiveSlots(Slot slot) {
+        List<ActiveSlot> activeSlots = activeSlotIndex.get(slot);
+        if (activeSlots == null) {
+            return Collections.emptyList();
+        }
+        return activeSlots;
+    }
+
+    /**
+     * Called by the ActiveSlot when it creates a child, to keep the Slot index current.
+     */
+    protected void addActiveSlot(ActiveSlot activeSlot) {
+        List<ActiveSlot> activeSlots = activeSlotIndex.get(activeSlot.getSlot());
+        if (activeSlots == null) {
+            activeSlots = new ArrayList<ActiveSlot>(1);
+            activeSlotIndex.put(activeSlot.getSlot(), activeSlots);
+        }
+        activeSlots.add(activeSlot);
+    }
+
+    /**
+     * Called by the ActiveSlot when it removes a child, to keep the Slot index current.
+     */
+    protected void removeActiveSlot(ActiveSlot activeSlot) {
+        List<ActiveSlot> activeSlots = activeSlotIndex.get(activeSlot.getSlot());
+        if (activeSlots != null) {
+            // Compare by identity, because another ActiveSlot can display an equal Slot.
+            for (int i = 0; i < activeSlots.size(); i++) {
+                if (activeSlots.get(i) == activeSlot) {
+                    activeSlots.remove(i);
+                    break;
+                }
+            }
+            if (activeSlots.isEmpty()) {
+                activeSlotIndex.remove(activeSlot.getSlot());
+            }
+        }
+    }
 }
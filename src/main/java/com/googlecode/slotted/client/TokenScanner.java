@@ -0,0 +1,124 @@
+/*
+ * Copyright 2012 Jeffrey Kleiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.googlecode.slotted.client;
+
+import java.util.List;
+
+/**
+ * Splits History tokens with index arithmetic in a single pass, instead of {@link String#split(String)}, which
+ * creates a RegExp and an intermediate array for each call in compiled JavaScript.
+ */
+public class TokenScanner {
+    private TokenScanner() {
+    }
+
+    /**
+     * Splits a History token into its Place segments and global parameter pairs.  Each segment is split at the
+     * first ':' into the Place name and the Place's parameter token.  Parameters follow the first '?', and are
+     * separated by '&amp;' with the name and value separated by the first '='.  A parameter without '=' gets an
+     * empty value, and empty parameters are skipped.  Trailing empty segments are dropped like String.split().
+     *
+     * @param token The History token.
+     * @param segments Receives the complete Place segments.
+     * @param names Receives the Place name of each segment.
+     * @param parameterTokens Receives the part of each segment after the ':', or "".
+     * @param parameterNames Receives the global parameter names.
+     * @param parameterValues Receives the global parameter values.
+     */
+    public static void scan(String token, List<String> segments, List<String> names, List<String> parameterTokens,
+            List<String> parameterNames, List<String> parameterValues)
+    {
+        int length = token.length();
+        int placesEnd = length;
+        int segmentStart = 0;
+        int colon = -1;
+        for (int i = 0; i <= length; i++) {
+            char c = i < length ? token.charAt(i) : '/';
+            if (c == '?') {
+                placesEnd = i;
+                c = '/';
+            }
+
+            if (c == ':' && colon < 0) {
+                colon = i;
+            } else if (c == '/') {
+                segments.add(token.substring(segmentStart, i));
+                if (colon < 0) {
+                    names.add(token.substring(segmentStart, i));
+                    parameterTokens.add("");
+                } else {
+                    names.add(token.substring(segmentStart, colon));
+                    parameterTokens.add(token.substring(colon + 1, i));
+                }
+                segmentStart = i + 1;
+                colon = -1;
+                if (placesEnd != length) {
+                    break;
+                }
+            }
+        }
+        while (segments.size() > 1 && segments.get(segments.size() - 1).isEmpty()) {
+            int last = segments.size() - 1;
+            segments.remove(last);
+            names.remove(last);
+            parameterTokens.remove(last);
+        }
+
+        int pairStart = placesEnd + 1;
+        int equals = -1;
+        for (int i = pairStart; i <= length; i++) {
+            char c = i < length ? token.charAt(i) : '&';
+            if (c == '=' && equals < 0) {
+                equals = i;
+            } else if (c == '&') {
+                if (i > pairStart) {
+                    if (equals < 0) {
+                        parameterNames.add(token.substring(pairStart, i));
+                        parameterValues.add("");
+                    } else {
+                        parameterNames.add(token.substring(pairStart, equals));
+                        parameterValues.add(token.substring(equals + 1, i));
+                    }
+                }
+                pairStart = i + 1;
+                equals = -1;
+            }
+        }
+    }
+
+    /**
+     * Splits the string at each separator.  Like String.split(), trailing empty strings are dropped, and an empty
+     * string produces one empty part.
+     *
+     * @param string The string to split.
+     * @param separator The separator character.
+     * @param into Receives the parts.
+     */
+    public static void split(String string, char separator, List<String> into) {
+        int size = into.size();
+        int start = 0;
+        int length = string.length();
+        for (int i = 0; i <= length; i++) {
+            if (i == length || string.charAt(i) == separator) {
+                into.add(string.substring(start, i));
+                start = i + 1;
+            }
+        }
+        while (into.size() > size + 1 && into.get(into.size() - 1).isEmpty()) {
+            into.remove(into.size() - 1);
+        }
+    }
+}
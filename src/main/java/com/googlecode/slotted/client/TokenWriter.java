@@ -0,0 +1,159 @@
+/*
+ * Copyright 2012 Jeffrey Kleiss
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.googlecode.slotted.client;
+
+import java.sql.Timestamp;
+import java.util.Date;
+
+import com.google.gwt.http.client.URL;
+import com.google.gwt.i18n.client.DateTimeFormat;
+import com.google.gwt.i18n.client.DateTimeFormat.PredefinedFormat;
+
+/**
+ * Builds a History token in a single buffer, so creating a token doesn't concatenate a new String for every
+ * Place and parameter.  The add() methods write a Place parameter, separated by '&amp;' and encoded the same way
+ * as {@link TokenizerUtil}.
+ */
+public class TokenWriter {
+    private StringBuilder builder = new StringBuilder();
+    private int parameterCount;
+    private int placeParametersStart = -1;
+
+    /**
+     * Writes the Place name followed by the ':' that starts its parameters.  The ':' is removed by
+     * {@link #endPlace()} if no parameters are written.
+     *
+     * @param name The name of the Place in the token.
+     */
+    public TokenWriter startPlace(String name) {
+        builder.append(name).append(':');
+        placeParametersStart = builder.length();
+        parameterCount = 0;
+        return this;
+    }
+
+    /**
+     * Ends the Place started by {@link #startPlace(String)}.
+     */
+    public TokenWriter endPlace() {
+        if (placeParametersStart == builder.length()) {
+            builder.setLength(placeParametersStart - 1);
+        }
+        placeParametersStart = -1;
+        parameterCount = 0;
+        return this;
+    }
+
+    /**
+     * Writes text without encoding it, for example the '/' between Places or a token from a PlaceTokenizer.
+     */
+    public TokenWriter append(String text) {
+        builder.append(text);
+        return this;
+    }
+
+    public TokenWriter append(char c) {
+        builder.append(c);
+        return this;
+    }
+
+    /**
+     * Writes a global parameter pair, starting with '?' for the first pair and '&amp;' after that.
+     *
+     * @param first True if this is the first global parameter.
+     */
+    public TokenWriter appendGlobalParameter(boolean first, String name, String value) {
+        builder.append(first ? '?' : '&').append(name).append('=').append(value);
+        return this;
+    }
+
+    /**
+     * Writes an encoded Place parameter, or '#' if the parameter is null.
+     */
+    public TokenWriter add(String param) {
+        startParameter();
+        if (param == null) {
+            builder.append('#');
+        } else {
+            builder.append(URL.encodePathSegment(param));
+        }
+        return this;
+    }
+
+    public TokenWriter add(Object param) {
+        return add(param == null ? "" : param.toString());
+    }
+
+    public TokenWriter add(int param) {
+        startParameter();
+        builder.append(param);
+        return this;
+    }
+
+    public TokenWriter add(long param) {
+        startParameter();
+        builder.append(param);
+        return this;
+    }
+
+    public TokenWriter add(float param) {
+        startParameter();
+        builder.append(param);
+        return this;
+    }
+
+    public TokenWriter add(double param) {
+        startParameter();
+        builder.append(param);
+        return this;
+    }
+
+    public TokenWriter add(boolean param) {
+        startParameter();
+        builder.append(param);
+        return this;
+    }
+
+    public TokenWriter add(char param) {
+        return add("" + param);
+    }
+
+    public TokenWriter add(Date param) {
+        if (param != null) {
+            return add(DateTimeFormat.getFormat(PredefinedFormat.ISO_8601).format(param));
+        }
+        return add("");
+    }
+
+    public TokenWriter add(Timestamp param) {
+        return add((Date) param);
+    }
+
+    private void startParameter() {
+        if (parameterCount > 0) {
+            builder.append('&');
+        }
+        parameterCount++;
+    }
+
+    public int length() {
+        return builder.length();
+    }
+
+    @Override public String toString() {
+        return builder.toString();
+    }
+}
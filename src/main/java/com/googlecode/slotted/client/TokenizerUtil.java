@@ -7,6 +7,7 @@ import com.google.gwt.i18n.client.DateTimeFormat.PredefinedFormat;
 import java.sql.Timestamp;
 import java.util.Date;
 import java.util.LinkedList;
+import java.util.ListIterator;
 
 /**
  * A utility class used by {@link AutoTokenizer}.
@@ -28,36 +29,62 @@ public class TokenizerUtil {
     }
 
     private TokenizerUtil(String token) {
-        String[] params = token.split("&");
         parameters = new LinkedList<String>();
-        for (String param: params) {
+        TokenScanner.split(token, '&', parameters);
+        ListIterator<String> paramIt = parameters.listIterator();
+        while (paramIt.hasNext()) {
+            String param = paramIt.next();
             if ("#".equals(param)) {
-                parameters.add(null);
+                paramIt.set(null);
 
-            } else {
-                param = URL.decodePathSegment(param);
-                parameters.add(param);
+            } else if (param.indexOf('%') >= 0) {
+                paramIt.set(decode(param));
             }
         }
     }
 
-    public String tokenize() {
-        StringBuilder sb = new StringBuilder();
-        boolean first = true;
-        for (String param: parameters) {
-            if (!first) {
-                sb.append("&");
-            } else {
-                first = false;
-            }
-            if (param == null) {
-                sb.append("#");
-            } else {
-                sb.append(URL.encodePathSegment(param));
+    /**
+     * URL decodes the parameter, keeping the raw value if it has a malformed escape, because decodeURIComponent
+     * throws a URIError for escapes like "%zz" or invalid UTF-8 sequences.
+     */
+    private static String decode(String param) {
+        if (!hasValidEscapes(param)) {
+            return param;
+        }
+        try {
+            return URL.decodePathSegment(param);
+        } catch (RuntimeException e) {
+            return param;
+        }
+    }
+
+    private static boolean hasValidEscapes(String param) {
+        int length = param.length();
+        for (int i = 0; i < length; i++) {
+            if (param.charAt(i) == '%') {
+                if (i + 2 >= length || !isHex(param.charAt(i + 1)) || !isHex(param.charAt(i + 2))) {
+                    return false;
+                }
+                i += 2;
             }
         }
+        return true;
+    }
+
+    private static boolean isHex(char c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
 
-        return sb.toString();
+    public String tokenize() {
+        TokenWriter writer = new TokenWriter();
+        writeTo(writer);
+        return writer.toString();
+    }
+
+    public void writeTo(TokenWriter writer) {
+        for (String param: parameters) {
+            writer.add(param);
+        }
     }
 
     public boolean hasMore() {
@@ -92,6 +119,13 @@ public class TokenizerUtil {
         return 0;
     }
 
+    public long getlong() {
+        if (!parameters.isEmpty()) {
+            return Long.parseLong(parameters.removeFirst());
+        }
+        return 0L;
+    }
+
     public float getfloat() {
         if (!parameters.isEmpty()) {
             return Float.parseFloat(parameters.removeFirst());
@@ -240,6 +274,11 @@ public class TokenizerUtil {
         return this;
     }
 
+    public TokenizerUtil add(long param) {
+        parameters.add("" + param);
+        return this;
+    }
+
     public TokenizerUtil add(float param) {
         parameters.add("" + param);
         return this;
@@ -0,0 +1,62 @@
+package com.googlecode.slotted.client.widgets;
+
+import com.google.gwt.event.dom.client.FocusEvent;
+import com.google.gwt.event.dom.client.FocusHandler;
+import com.google.gwt.event.dom.client.HasFocusHandlers;
+import com.google.gwt.event.dom.client.HasMouseOverHandlers;
+import com.google.gwt.event.dom.client.HasTouchStartHandlers;
+import com.google.gwt.event.dom.client.MouseOverEvent;
+import com.google.gwt.event.dom.client.MouseOverHandler;
+import com.google.gwt.event.dom.client.TouchStartEvent;
+import com.google.gwt.event.dom.client.TouchStartHandler;
+import com.google.gwt.event.shared.HandlerRegistration;
+import com.googlecode.slotted.client.SlottedController;
+import com.googlecode.slotted.client.SlottedPlace;
+
+import java.util.ArrayList;
+
+/**
+ * Calls {@link SlottedController#prefetch(SlottedPlace)} when the user hovers, focuses or touches a
+ * navigation widget, so the Place's code is loading before the click.
+ */
+public class PrefetchHandler implements MouseOverHandler, FocusHandler, TouchStartHandler {
+    private SlottedController slottedController;
+    private SlottedPlace place;
+
+    public PrefetchHandler(SlottedController slottedController, SlottedPlace place) {
+        this.slottedController = slottedController;
+        this.place = place;
+    }
+
+    /**
+     * Adds the handler for every prefetch event the widget supports.
+     *
+     * @param widget The navigation widget.
+     * @return The registrations, which can be used to remove the handlers.
+     */
+    public ArrayList<HandlerRegistration> addTo(Object widget) {
+        ArrayList<HandlerRegistration> registrations = new ArrayList<HandlerRegistration>();
+        if (widget instanceof HasMouseOverHandlers) {
+            registrations.add(((HasMouseOverHandlers) widget).addMouseOverHandler(this));
+        }
+        if (widget instanceof HasFocusHandlers) {
+            registrations.add(((HasFocusHandlers) widget).addFocusHandler(this));
+        }
+        if (widget instanceof HasTouchStartHandlers) {
+            registrations.add(((HasTouchStartHandlers) widget).addTouchStartHandler(this));
+        }
+        return registrations;
+    }
+
+    @Override public void onMouseOver(MouseOverEvent event) {
+        slottedController.prefetch(place);
+    }
+
+    @Override public void onFocus(FocusEvent event) {
+        slottedController.prefetch(place);
+    }
+
+    @Override public void onTouchStart(TouchStartEvent event) {
+        slottedController.prefetch(place);
+    }
+}
@@ -2,22 +2,50 @@ package com.googlecode.slotted.client.widgets;
 
 import com.google.gwt.event.dom.client.ClickEvent;
 import com.google.gwt.event.dom.client.ClickHandler;
+import com.google.gwt.event.shared.HandlerRegistration;
 import com.google.gwt.safehtml.shared.SafeHtml;
 import com.google.gwt.user.client.ui.Anchor;
 import com.googlecode.slotted.client.SlottedController;
 import com.googlecode.slotted.client.SlottedPlace;
 
+import java.util.ArrayList;
+
 public class SlottedHyperlink extends Anchor {
+    private SlottedPlace place;
+    private ArrayList<HandlerRegistration> prefetchRegistrations;
+
     public SlottedHyperlink(SafeHtml html, SlottedPlace place, SlottedPlace... nonDefaultPlaces) {
         this(html.asString(), place, nonDefaultPlaces);
     }
 
     public SlottedHyperlink(String text, final SlottedPlace place, final SlottedPlace... nonDefaultPlaces) {
         super(text);
+        this.place = place;
         addClickHandler(new ClickHandler() {
             @Override public void onClick(ClickEvent event) {
                 SlottedController.instance.goTo(place, nonDefaultPlaces);
             }
         });
     }
+
+    /**
+     * Enables prefetching the Place's code on mouse over, focus and touch start.
+     *
+     * @param prefetch True to prefetch the Place before it is clicked.
+     * @see SlottedController#prefetch(SlottedPlace)
+     */
+    public void setPrefetch(boolean prefetch) {
+        if (prefetch && prefetchRegistrations == null) {
+            prefetchRegistrations = new PrefetchHandler(SlottedController.instance, place).addTo(this);
+        } else if (!prefetch && prefetchRegistrations != null) {
+            for (HandlerRegistration registration: prefetchRegistrations) {
+                registration.removeHandler();
+            }
+            prefetchRegistrations = null;
+        }
+    }
+
+    public boolean isPrefetch() {
+        return prefetchRegistrations != null;
+    }
 }
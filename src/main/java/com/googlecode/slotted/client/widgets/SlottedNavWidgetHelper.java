@@ -3,6 +3,7 @@ package com.googlecode.slotted.client.widgets;
 import com.google.gwt.event.dom.client.ClickEvent;
 import com.google.gwt.event.dom.client.ClickHandler;
 import com.google.gwt.event.dom.client.HasClickHandlers;
+import com.google.gwt.event.shared.HandlerRegistration;
 import com.google.gwt.place.shared.Place;
 import com.google.web.bindery.event.shared.EventBus;
 import com.google.web.bindery.event.shared.ResettableEventBus;
@@ -10,14 +11,19 @@ import com.googlecode.slotted.client.NewPlacesEvent;
 import com.googlecode.slotted.client.SlottedController;
 import com.googlecode.slotted.client.SlottedPlace;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Map;
 
 abstract public class SlottedNavWidgetHelper<D extends HasClickHandlers> implements NewPlacesEvent.Handler {
 
     protected HashMap<Class, D> byClassMap = new HashMap<Class, D>();
     protected HashMap<Place, D> strictEqualMap = new HashMap<Place, D>();
     protected HashMap<D, Place> widgetMap = new HashMap<D, Place>();
+    private HashMap<D, ArrayList<HandlerRegistration>> prefetchRegistrations =
+            new HashMap<D, ArrayList<HandlerRegistration>>();
     private boolean clearActiveOnNoMatch = true;
+    private boolean prefetch = false;
 
     private SlottedController slottedController;
 
@@ -38,6 +44,32 @@ abstract public class SlottedNavWidgetHelper<D extends HasClickHandlers> impleme
         this.clearActiveOnNoMatch = clearActiveOnNoMatch;
     }
 
+    public boolean isPrefetch() {
+        return prefetch;
+    }
+
+    /**
+     * Enables prefetching the Place's code on mouse over, focus and touch start for the nav widgets,
+     * including the ones that were already added.  Only widgets that support those events are prefetched.
+     *
+     * @param prefetch True to prefetch Places before they are clicked.
+     * @see SlottedController#prefetch(SlottedPlace)
+     */
+    public void setPrefetch(boolean prefetch) {
+        this.prefetch = prefetch;
+        for (Map.Entry<D, ArrayList<HandlerRegistration>> entry: prefetchRegistrations.entrySet()) {
+            if (prefetch && entry.getValue() == null) {
+                SlottedPlace place = (SlottedPlace) widgetMap.get(entry.getKey());
+                entry.setValue(new PrefetchHandler(slottedController, place).addTo(entry.getKey()));
+            } else if (!prefetch && entry.getValue() != null) {
+                for (HandlerRegistration registration: entry.getValue()) {
+                    registration.removeHandler();
+                }
+                entry.setValue(null);
+            }
+        }
+    }
+
     public void addNavWidget(D widget, SlottedPlace place) {
         addNavWidget(widget, place, false);
     }
@@ -75,6 +107,16 @@ abstract public class SlottedNavWidgetHelper<D extends HasClickHandlers> impleme
                 slottedController.goTo(place);
             }
         });
+        ArrayList<HandlerRegistration> registrations = null;
+        if (prefetch) {
+            registrations = new PrefetchHandler(slottedController, place).addTo(widget);
+        }
+        ArrayList<HandlerRegistration> replaced = prefetchRegistrations.put(widget, registrations);
+        if (replaced != null) {
+            for (HandlerRegistration registration: replaced) {
+                registration.removeHandler();
+            }
+        }
     }
 
     public void clearActive() {
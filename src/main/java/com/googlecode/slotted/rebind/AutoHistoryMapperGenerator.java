@@ -2,7 +2,12 @@ package com.googlecode.slotted.rebind;
 
 import java.io.PrintWriter;
 import java.lang.annotation.Annotation;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 
 import com.google.gwt.core.client.GWT;
@@ -22,7 +27,9 @@ import com.google.gwt.user.rebind.SourceWriter;
 import com.googlecode.slotted.client.AutoHistoryMapper;
 import com.googlecode.slotted.client.CacheActivities;
 import com.googlecode.slotted.client.CodeSplit;
+import com.googlecode.slotted.client.CompactTokenId;
 import com.googlecode.slotted.client.ScanPackages;
+import com.googlecode.slotted.client.SlottedPlace;
 
 public class AutoHistoryMapperGenerator extends Generator {
     private static String NamePostfix = "Gen";
@@ -67,6 +74,7 @@ public class AutoHistoryMapperGenerator extends Generator {
         composer.setSuperclass(implementName);
         composer.addImport(GWT.class.getCanonicalName());
         composer.addImport(PlaceTokenizer.class.getCanonicalName());
+        composer.addImport(IdentityHashMap.class.getCanonicalName());
 
         PrintWriter printWriter = context.tryCreate(logger, packageName,simpleName);
 
@@ -85,39 +93,242 @@ public class AutoHistoryMapperGenerator extends Generator {
         JClassType placeType = typeOracle.getType(Place.class.getName());
         JClassType tokenizerType = typeOracle.getType(PlaceTokenizer.class.getName());
 
-        sourceWriter.println("protected void init() {");
-        sourceWriter.indent();
-
-        JClassType[] types = typeOracle.getTypes();
+        List<JClassType> types = getSortedTypes(typeOracle);
         List<String> scanPackages = getScanPackages(context, clazz);
 
+        ArrayList<JClassType> places = new ArrayList<JClassType>();
+        ArrayList<String> names = new ArrayList<String>();
+        ArrayList<String> tokenizerParams = new ArrayList<String>();
+        ArrayList<JClassType> registryMappers = new ArrayList<JClassType>();
+        HashMap<String, JClassType> namedPlaces = new HashMap<String, JClassType>();
+        HashMap<Integer, JClassType> idPlaces = new HashMap<Integer, JClassType>();
+        ArrayList<Integer> compactIds = new ArrayList<Integer>();
         for (JClassType place: types) {
             if (!place.isAbstract() && place.isDefaultInstantiable() &&
                     place.isAssignableTo(placeType) && isInScanPackages(place, scanPackages))
             {
                 JClassType tokenizer = getTokenizer(place, tokenizerType);
-                String prefix = getPrefix(place, tokenizer);
-                String placeActivitiesToCache = getPlaceActivitiesToCache(place);
-                String codeSplitMapper = getCodeSplitMapper(place);
-
-                String tokenizerParam;
-                if (tokenizer != null) {
-                    tokenizerParam = "(PlaceTokenizer) GWT.create(" +
-                            tokenizer.getQualifiedSourceName() + ".class)";
-                } else {
-                    String autoTokenizer = new AutoTokenizerGenerator().generate(logger, context,
-                            place.getQualifiedSourceName());
-                    tokenizerParam = "(PlaceTokenizer) GWT.create(" + autoTokenizer + ".class)";
+                String name = getName(place, tokenizer);
+                JClassType duplicate = namedPlaces.put(name, place);
+                if (duplicate != null) {
+                    logger.log(TreeLogger.ERROR, "Places " + duplicate.getQualifiedSourceName() + " and " +
+                            place.getQualifiedSourceName() + " both use the name '" + name + "' in the " +
+                            "History token.  Use @Prefix to give one of them a different name.");
+                    throw new UnableToCompleteException();
                 }
 
-                sourceWriter.println("registerPlace(" + place.getQualifiedSourceName() +
-                        ".class, " + prefix + ", " + tokenizerParam + ", " +
+                // Places in a CodeSplitRegistry get their tokenizer from the registry in the mapper's fragment.
+                JClassType registryMapper = PlaceRegistryGenerator.getRegistryMapper(typeOracle, place);
+                String tokenizerParam = "null";
+                if (registryMapper == null) {
+                    tokenizerParam = getTokenizerParam(logger, context, place, tokenizer);
+                }
+
+                int compactId = getCompactTokenId(logger, place, idPlaces);
+
+                places.add(place);
+                names.add(name);
+                compactIds.add(compactId);
+                tokenizerParams.add(tokenizerParam);
+                registryMappers.add(registryMapper);
+            }
+        }
+
+        writePlaceTables(sourceWriter, places, names, tokenizerParams, registryMappers);
+
+        sourceWriter.println("protected void init() {");
+        sourceWriter.indent();
+        for (JClassType place: places) {
+            String placeActivitiesToCache = getPlaceActivitiesToCache(logger, typeOracle, place);
+            String codeSplitMapper = getCodeSplitMapper(place);
+            if (!"null".equals(placeActivitiesToCache) || !"null".equals(codeSplitMapper)) {
+                sourceWriter.println("registerPlaceMetadata(" + place.getQualifiedSourceName() + ".class, " +
                         placeActivitiesToCache + ", " + codeSplitMapper + ");");
             }
         }
+        if (isValidatePlaces(context)) {
+            sourceWriter.println("validatePlaces(placeClasses);");
+        } else {
+            sourceWriter.println("if (!GWT.isProdMode()) {");
+            sourceWriter.println("    validatePlaces(placeClasses);");
+            sourceWriter.println("}");
+        }
+        sourceWriter.outdent();
+        sourceWriter.println("}");
+        sourceWriter.println();
+
+        writeLookupMethods(sourceWriter, names);
+        writeCompactIdMethods(sourceWriter, names, compactIds);
+    }
+
+    /**
+     * Gets the types sorted by name, because the order from the TypeOracle can change between compiles and the
+     * generated tables should only change when the Places do.
+     */
+    private List<JClassType> getSortedTypes(TypeOracle typeOracle) {
+        ArrayList<JClassType> types = new ArrayList<JClassType>(Arrays.asList(typeOracle.getTypes()));
+        Collections.sort(types, new Comparator<JClassType>() {
+            @Override public int compare(JClassType type1, JClassType type2) {
+                return type1.getQualifiedSourceName().compareTo(type2.getQualifiedSourceName());
+            }
+        });
+        return types;
+    }
+
+    /**
+     * Gets the Place's {@link CompactTokenId}, which must be unique because compact tokens decode the id back
+     * into the Place.
+     *
+     * @return The id, or -1 if the Place is written with its name.
+     */
+    private int getCompactTokenId(TreeLogger logger, JClassType place, HashMap<Integer, JClassType> idPlaces)
+            throws UnableToCompleteException
+    {
+        CompactTokenId annotation = place.getAnnotation(CompactTokenId.class);
+        if (annotation == null) {
+            return -1;
+        }
+        int id = annotation.value();
+        if (id < 0) {
+            logger.log(TreeLogger.ERROR, "@CompactTokenId on " + place.getQualifiedSourceName() +
+                    " is negative, but ids must be 0 or more.");
+            throw new UnableToCompleteException();
+        }
+        JClassType duplicate = idPlaces.put(id, place);
+        if (duplicate != null) {
+            logger.log(TreeLogger.ERROR, "Places " + duplicate.getQualifiedSourceName() + " and " +
+                    place.getQualifiedSourceName() + " both use @CompactTokenId(" + id + ").");
+            throw new UnableToCompleteException();
+        }
+        return id;
+    }
+
+    /**
+     * Writes the tables indexed by the generated Place index.  Tokenizers are created with the HistoryMapper,
+     * because AutoTokenizers register themselves for {@link com.googlecode.slotted.client.SlottedPlace#equals(Object)}.
+     */
+    private void writePlaceTables(SourceWriter sourceWriter, List<JClassType> places, List<String> names,
+            List<String> tokenizerParams, List<JClassType> registryMappers)
+    {
+        sourceWriter.println("private static final String[] placeNames = {");
+        for (String name: names) {
+            sourceWriter.println("    \"" + Generator.escape(name) + "\",");
+        }
+        sourceWriter.println("};");
+        sourceWriter.println();
+
+        sourceWriter.println("private static final Class[] placeClasses = {");
+        for (JClassType place: places) {
+            sourceWriter.println("    " + place.getQualifiedSourceName() + ".class,");
+        }
+        sourceWriter.println("};");
+        sourceWriter.println();
+
+        sourceWriter.println("private final PlaceTokenizer[] placeTokenizers = {");
+        for (String tokenizerParam: tokenizerParams) {
+            sourceWriter.println("    " + tokenizerParam + ",");
+        }
+        sourceWriter.println("};");
+        sourceWriter.println();
+
+        sourceWriter.println("private static final Class[] placeRegistryMappers = {");
+        for (JClassType registryMapper: registryMappers) {
+            sourceWriter.println("    " + (registryMapper != null ?
+                    registryMapper.getQualifiedSourceName() + ".class" : "null") + ",");
+        }
+        sourceWriter.println("};");
+        sourceWriter.println();
+
+        sourceWriter.println("private IdentityHashMap<Class, Integer> placeClassIndexes;");
+        sourceWriter.println();
+    }
+
+    private void writeLookupMethods(SourceWriter sourceWriter, List<String> names) {
+        sourceWriter.println("private static int getGeneratedPlaceIndex(String name) {");
+        sourceWriter.indent();
+        sourceWriter.println("if (name == null) {");
+        sourceWriter.println("    return -1;");
+        sourceWriter.println("}");
+        sourceWriter.println("switch (name) {");
+        for (int i = 0; i < names.size(); i++) {
+            sourceWriter.println("    case \"" + Generator.escape(names.get(i)) + "\": return " + i + ";");
+        }
+        sourceWriter.println("    default: return -1;");
+        sourceWriter.println("}");
+        sourceWriter.outdent();
+        sourceWriter.println("}");
+        sourceWriter.println();
+
+        sourceWriter.println("@Override protected PlaceTokenizer getTokenizer(String name) {");
+        sourceWriter.indent();
+        sourceWriter.println("int index = getGeneratedPlaceIndex(name);");
+        sourceWriter.println("if (index < 0) {");
+        sourceWriter.println("    return super.getTokenizer(name);");
+        sourceWriter.println("}");
+        sourceWriter.println("if (placeTokenizers[index] == null) {");
+        sourceWriter.println("    placeTokenizers[index] = getRegistryTokenizer(name, placeRegistryMappers[index]);");
+        sourceWriter.println("}");
+        sourceWriter.println("return placeTokenizers[index];");
+        sourceWriter.outdent();
+        sourceWriter.println("}");
+        sourceWriter.println();
+
+        sourceWriter.println("@Override protected Class getRegistryMapper(String name) {");
+        sourceWriter.indent();
+        sourceWriter.println("int index = getGeneratedPlaceIndex(name);");
+        sourceWriter.println("return index >= 0 ? placeRegistryMappers[index] : super.getRegistryMapper(name);");
+        sourceWriter.outdent();
+        sourceWriter.println("}");
+        sourceWriter.println();
+
+        sourceWriter.println("@Override public String getPlaceName(Class placeClass) {");
+        sourceWriter.indent();
+        sourceWriter.println("if (placeClassIndexes == null) {");
+        sourceWriter.println("    placeClassIndexes = new IdentityHashMap<Class, Integer>();");
+        sourceWriter.println("    for (int i = 0; i < placeClasses.length; i++) {");
+        sourceWriter.println("        placeClassIndexes.put(placeClasses[i], i);");
+        sourceWriter.println("    }");
+        sourceWriter.println("}");
+        sourceWriter.println("Integer index = placeClassIndexes.get(placeClass);");
+        sourceWriter.println("return index != null ? placeNames[index] : super.getPlaceName(placeClass);");
+        sourceWriter.outdent();
+        sourceWriter.println("}");
+        sourceWriter.println();
+    }
+
+    /**
+     * Writes the lookups between Place names and {@link CompactTokenId}s.  Places without an id fall back to
+     * the ids registered at runtime.
+     */
+    private void writeCompactIdMethods(SourceWriter sourceWriter, List<String> names, List<Integer> compactIds) {
+        sourceWriter.println("@Override protected int getPlaceId(String name) {");
+        sourceWriter.indent();
+        sourceWriter.println("switch (getGeneratedPlaceIndex(name)) {");
+        for (int i = 0; i < names.size(); i++) {
+            if (compactIds.get(i) >= 0) {
+                sourceWriter.println("    case " + i + ": return " + compactIds.get(i) + ";");
+            }
+        }
+        sourceWriter.println("    default: return super.getPlaceId(name);");
+        sourceWriter.println("}");
+        sourceWriter.outdent();
+        sourceWriter.println("}");
+        sourceWriter.println();
 
+        sourceWriter.println("@Override protected String getPlaceName(int id) {");
+        sourceWriter.indent();
+        sourceWriter.println("switch (id) {");
+        for (int i = 0; i < names.size(); i++) {
+            if (compactIds.get(i) >= 0) {
+                sourceWriter.println("    case " + compactIds.get(i) + ": return \"" +
+                        Generator.escape(names.get(i)) + "\";");
+            }
+        }
+        sourceWriter.println("    default: return super.getPlaceName(id);");
+        sourceWriter.println("}");
         sourceWriter.outdent();
         sourceWriter.println("}");
+        sourceWriter.println();
     }
 
     private List<String> getScanPackages(GeneratorContext context, JClassType clazz) {
@@ -134,6 +345,20 @@ public class AutoHistoryMapperGenerator extends Generator {
 
     }
 
+    /**
+     * Returns true if the slotted.validate.places configuration property is true, so every Place is validated
+     * when the HistoryMapper is created, instead of only in development mode.
+     */
+    private boolean isValidatePlaces(GeneratorContext context) {
+        try {
+            List<String> values = context.getPropertyOracle().getConfigurationProperty("slotted.validate.places")
+                    .getValues();
+            return !values.isEmpty() && Boolean.parseBoolean(values.get(0));
+        } catch (BadPropertyValueException e) {
+            return false;
+        }
+    }
+
     private boolean isInScanPackages(JClassType place, List<String> scanPackages) {
         if (scanPackages == null || scanPackages.isEmpty()) {
             return true;
@@ -149,7 +374,23 @@ public class AutoHistoryMapperGenerator extends Generator {
         return false;
     }
 
-    private JClassType getTokenizer(JClassType place, JClassType tokenizerType) {
+    /**
+     * Gets the expression that creates the Place's tokenizer, generating an AutoTokenizer if the Place doesn't
+     * have a nested PlaceTokenizer.
+     */
+    String getTokenizerParam(TreeLogger logger, GeneratorContext context, JClassType place, JClassType tokenizer)
+            throws UnableToCompleteException
+    {
+        if (tokenizer != null) {
+            return "(PlaceTokenizer) GWT.create(" + tokenizer.getQualifiedSourceName() + ".class)";
+        } else {
+            String autoTokenizer = new AutoTokenizerGenerator().generate(logger, context,
+                    place.getQualifiedSourceName());
+            return "(PlaceTokenizer) GWT.create(" + autoTokenizer + ".class)";
+        }
+    }
+
+    JClassType getTokenizer(JClassType place, JClassType tokenizerType) {
         JClassType[] nestedTypes = place.getNestedTypes();
         JClassType tokenizer = null;
         for (JClassType nestedType: nestedTypes) {
@@ -161,35 +402,70 @@ public class AutoHistoryMapperGenerator extends Generator {
         return tokenizer;
     }
 
-    private String getPrefix(JClassType place, JClassType tokenizer) {
-        String prefix = null;
+    /**
+     * Gets the lowercase name of the Place in the History token, the same way
+     * {@link com.googlecode.slotted.client.HistoryMapper#registerPlace(Class, String, PlaceTokenizer, Class[], Class)}
+     * does at runtime.
+     */
+    String getName(JClassType place, JClassType tokenizer) {
+        String name = null;
         if (tokenizer != null) {
-            prefix = findPrefix(tokenizer);
+            name = findPrefix(tokenizer);
         }
-        if (prefix == null) {
-            prefix = findPrefix(place);
+        if (name == null) {
+            name = findPrefix(place);
+        }
+        if (name == null) {
+            name = place.getQualifiedBinaryName();
+            int index = name.lastIndexOf(".");
+            if (name.endsWith("Place")) {
+                name = name.substring(index + 1, name.length() - 5);
+            } else {
+                name = name.substring(index + 1);
+            }
         }
 
-        return prefix;
+        return name.toLowerCase();
     }
 
     private String findPrefix(JClassType type) {
         Annotation[] annotations = type.getAnnotations();
         for (Annotation annotation: annotations) {
             if (annotation instanceof Prefix) {
-                Prefix prefixAnnotation = (Prefix) annotation;
-                return "\"" + prefixAnnotation.value() + "\"";
+                return ((Prefix) annotation).value();
             }
         }
         return null;
     }
 
-    private String getPlaceActivitiesToCache(JClassType place) {
+    /**
+     * Gets the array of @CacheActivities Places, which must be concrete SlottedPlaces with a default
+     * constructor, because they are created to enable their Slots for background display.
+     */
+    private String getPlaceActivitiesToCache(TreeLogger logger, TypeOracle typeOracle, JClassType place)
+            throws NotFoundException, UnableToCompleteException
+    {
+        JClassType slottedPlaceType = typeOracle.getType(SlottedPlace.class.getName());
         for (Annotation annotation: place.getAnnotations()) {
             if (annotation instanceof CacheActivities) {
                 StringBuilder cacheArray = new StringBuilder();
                 cacheArray.append("new Class[]{");
                 for (Class placeClass: ((CacheActivities) annotation).value()) {
+                    JClassType cacheType = typeOracle.findType(placeClass.getCanonicalName());
+                    if (cacheType == null || cacheType.isAbstract() || !cacheType.isDefaultInstantiable() ||
+                            !cacheType.isAssignableTo(slottedPlaceType))
+                    {
+                        logger.log(TreeLogger.ERROR, "@CacheActivities on " + place.getQualifiedSourceName() +
+                                " references " + placeClass.getName() + ", but Cache Activity/Places must be a " +
+                                "SlottedPlace with a default constructor which can be private.");
+                        throw new UnableToCompleteException();
+                    }
+                    if (PlaceRegistryGenerator.getRegistryMapper(typeOracle, cacheType) != null) {
+                        logger.log(TreeLogger.ERROR, "@CacheActivities on " + place.getQualifiedSourceName() +
+                                " references " + placeClass.getName() + ", which is in a @CodeSplitRegistry. " +
+                                "Cache Activity/Places are created before their fragment is loaded, so they can't be code split.");
+                        throw new UnableToCompleteException();
+                    }
                     cacheArray.append(placeClass.getCanonicalName());
                     cacheArray.append(".class,");
 
@@ -14,10 +14,12 @@ import com.google.gwt.place.shared.PlaceTokenizer;
 import com.google.gwt.user.rebind.ClassSourceFileComposerFactory;
 import com.google.gwt.user.rebind.SourceWriter;
 import com.googlecode.slotted.client.AutoTokenizer;
+import com.googlecode.slotted.client.GeneratedAutoTokenizer;
 import com.googlecode.slotted.client.GlobalParameter;
 import com.googlecode.slotted.client.PlaceParameters;
 import com.googlecode.slotted.client.SlottedPlace;
 import com.googlecode.slotted.client.TokenizerParameter;
+import com.googlecode.slotted.client.TokenWriter;
 import com.googlecode.slotted.client.TokenizerUtil;
 
 import java.io.PrintWriter;
@@ -80,6 +82,7 @@ public class AutoTokenizerGenerator extends Generator {
                 writeGetToken(sourceWriter, tokenParams, placeType);
                 writeGetPlace(sourceWriter, tokenParams, placeType);
                 writeEquals(sourceWriter, equalsParams, placeType);
+                writeCopy(sourceWriter, tokenParams, globalParams, placeType);
 
                 sourceWriter.commit(logger);
                 logger.log(TreeLogger.DEBUG, "Done Generating source for " + placeType.getName(), null);
@@ -128,12 +131,13 @@ public class AutoTokenizerGenerator extends Generator {
         ClassSourceFileComposerFactory composer =
                 new ClassSourceFileComposerFactory(packageName, simpleName);
 
-        composer.addImplementedInterface(AutoTokenizer.class.getCanonicalName() +
+        composer.addImplementedInterface(GeneratedAutoTokenizer.class.getCanonicalName() +
                 "<" + classType.getQualifiedSourceName() + ">");
         composer.addImport(GWT.class.getCanonicalName());
         composer.addImport(PlaceTokenizer.class.getCanonicalName());
         composer.addImport(PlaceParameters.class.getCanonicalName());
         composer.addImport(TokenizerUtil.class.getCanonicalName());
+        composer.addImport(TokenWriter.class.getCanonicalName());
         composer.addImport(Date.class.getCanonicalName());
         composer.addImport(Timestamp.class.getCanonicalName());
 
@@ -235,17 +239,50 @@ public class AutoTokenizerGenerator extends Generator {
         sourceWriter.println();
     }
 
+    private void writeCopy(SourceWriter sourceWriter, List<JField> tokenFields, List<JField> globalFields,
+            JClassType placeType)
+    {
+        String placeString = placeType.getQualifiedSourceName();
+        sourceWriter.println("public " + placeString + " copy(" + placeString + " place) {");
+        sourceWriter.indent();
+        sourceWriter.println(placeString + " copy = GWT.create(" + placeString + ".class);");
+        LinkedList<JField> fields = new LinkedList<JField>(tokenFields);
+        fields.addAll(globalFields);
+        for (JField field: fields) {
+            String fieldName = field.getName();
+            String typeName = field.getType().getQualifiedBinaryName();
+            if (Date.class.getName().equals(typeName) || Timestamp.class.getName().equals(typeName)) {
+                // Dates are mutable, so the copy gets its own instance like a parsed token would.
+                String simpleName = field.getType().getSimpleSourceName();
+                sourceWriter.println("set" + fieldName + "(copy, get" + fieldName + "(place) == null ? null : new " +
+                        simpleName + "(get" + fieldName + "(place).getTime()));");
+            } else {
+                sourceWriter.println("set" + fieldName + "(copy, get" + fieldName + "(place));");
+            }
+        }
+        sourceWriter.println("return copy;");
+        sourceWriter.outdent();
+        sourceWriter.println("}");
+        sourceWriter.println();
+    }
+
     private void writeGetToken(SourceWriter sourceWriter, List<JField> fields, JClassType placeType) {
         sourceWriter.println("public String getToken(" +
                 placeType.getQualifiedSourceName() + " place) {");
         if (fields.isEmpty()) {
             sourceWriter.println("    return \"\";");
         } else {
-            sourceWriter.println("    TokenizerUtil builder = TokenizerUtil.build();");
-            for (JField field: fields) {
-                sourceWriter.println("     builder.add(get" + field.getName() + "(place));");
-            }
-            sourceWriter.println("    return builder.tokenize();");
+            sourceWriter.println("    TokenWriter writer = new TokenWriter();");
+            sourceWriter.println("    writeToken(writer, place);");
+            sourceWriter.println("    return writer.toString();");
+        }
+        sourceWriter.println("}");
+        sourceWriter.println();
+
+        sourceWriter.println("public void writeToken(TokenWriter writer, " +
+                placeType.getQualifiedSourceName() + " place) {");
+        for (JField field: fields) {
+            sourceWriter.println("    writer.add(get" + field.getName() + "(place));");
         }
         sourceWriter.println("}");
         sourceWriter.println();
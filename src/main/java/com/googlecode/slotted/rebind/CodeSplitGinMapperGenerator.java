@@ -21,6 +21,7 @@ import com.google.gwt.core.ext.typeinfo.TypeOracle;
 import com.google.gwt.place.shared.Place;
 import com.google.gwt.user.rebind.ClassSourceFileComposerFactory;
 import com.google.gwt.user.rebind.SourceWriter;
+import com.googlecode.slotted.client.AbortableCallback;
 import com.googlecode.slotted.client.CodeSplit;
 import com.googlecode.slotted.client.CodeSplitGinMapper;
 import com.googlecode.slotted.client.CodeSplitLoadException;
@@ -48,7 +49,9 @@ public class CodeSplitGinMapperGenerator extends Generator {
             if (sourceWriter != null) {
                 JClassType ginType = getGinjectorType(logger, typeOracle, classType, ginMapperType);
                 List<JClassType> codeSplitPlaces = getCodeSplitPlaces(logger, typeOracle, typeName);
-                writeGetMethod(logger, sourceWriter);
+                String registration = new PlaceRegistryGenerator().generateRegistration(logger, context, classType,
+                        codeSplitPlaces);
+                writeGetMethod(logger, sourceWriter, registration);
                 writeGetActivityMethod(logger, sourceWriter, codeSplitPlaces, ginType);
 
                 sourceWriter.commit(logger);
@@ -79,6 +82,7 @@ public class CodeSplitGinMapperGenerator extends Generator {
         composer.addImport(SlottedPlace.class.getCanonicalName());
         composer.addImport(SlottedException.class.getCanonicalName());
         composer.addImport(CodeSplitLoadException.class.getCanonicalName());
+        composer.addImport(AbortableCallback.class.getCanonicalName());
 
         PrintWriter printWriter = context.tryCreate(logger, packageName,simpleName);
 
@@ -131,7 +135,7 @@ public class CodeSplitGinMapperGenerator extends Generator {
         return codeSplitPlaces;
     }
 
-    protected void writeGetMethod(TreeLogger logger, SourceWriter sourceWriter) throws NotFoundException, UnableToCompleteException {
+    protected void writeGetMethod(TreeLogger logger, SourceWriter sourceWriter, String registration) throws NotFoundException, UnableToCompleteException {
         sourceWriter.println("private boolean loaded = false;");
         sourceWriter.println("public boolean isLoaded() {");
         sourceWriter.indent();
@@ -155,12 +159,19 @@ public class CodeSplitGinMapperGenerator extends Generator {
         sourceWriter.println();
         sourceWriter.println("public void onSuccess() {");
         sourceWriter.indent();
+        if (registration != null) {
+            sourceWriter.println(registration);
+        }
         sourceWriter.println("loaded = true;");
         sourceWriter.println("if (place == null) {");
         sourceWriter.indent();
         sourceWriter.println("callback.onSuccess(null);");
         sourceWriter.outdent();
 
+        sourceWriter.println("} else if (callback instanceof AbortableCallback && ((AbortableCallback) callback).isAborted()) {");
+        sourceWriter.indent();
+        sourceWriter.println("// The navigation that requested the Activity was dropped, so don't construct it.");
+        sourceWriter.outdent();
         sourceWriter.println("} else {");
         sourceWriter.indent();
         sourceWriter.println("try {");
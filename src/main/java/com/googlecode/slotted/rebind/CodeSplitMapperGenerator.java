@@ -20,6 +20,7 @@ import com.google.gwt.core.ext.typeinfo.TypeOracle;
 import com.google.gwt.place.shared.Place;
 import com.google.gwt.user.rebind.ClassSourceFileComposerFactory;
 import com.google.gwt.user.rebind.SourceWriter;
+import com.googlecode.slotted.client.AbortableCallback;
 import com.googlecode.slotted.client.CodeSplit;
 import com.googlecode.slotted.client.CodeSplitLoadException;
 import com.googlecode.slotted.client.PlaceActivity;
@@ -44,7 +45,9 @@ public class CodeSplitMapperGenerator extends Generator {
             SourceWriter sourceWriter = getSourceWriter(logger, context, clazz);
             if (sourceWriter != null) {
                 List<JClassType> codeSplitPlaces = getCodeSplitPlaces(logger, typeOracle, typeName);
-                writeGetMethod(logger, sourceWriter);
+                String registration = new PlaceRegistryGenerator().generateRegistration(logger, context, clazz,
+                        codeSplitPlaces);
+                writeGetMethod(logger, sourceWriter, registration);
                 writeGetActivityMethod(logger, sourceWriter, codeSplitPlaces);
 
                 sourceWriter.commit(logger);
@@ -75,6 +78,7 @@ public class CodeSplitMapperGenerator extends Generator {
         composer.addImport(SlottedPlace.class.getCanonicalName());
         composer.addImport(SlottedException.class.getCanonicalName());
         composer.addImport(CodeSplitLoadException.class.getCanonicalName());
+        composer.addImport(AbortableCallback.class.getCanonicalName());
 
         PrintWriter printWriter = context.tryCreate(logger, packageName,simpleName);
 
@@ -115,7 +119,7 @@ public class CodeSplitMapperGenerator extends Generator {
         return codeSplitPlaces;
     }
 
-    protected void writeGetMethod(TreeLogger logger, SourceWriter sourceWriter) throws NotFoundException, UnableToCompleteException {
+    protected void writeGetMethod(TreeLogger logger, SourceWriter sourceWriter, String registration) throws NotFoundException, UnableToCompleteException {
         sourceWriter.println("private boolean loaded = false;");
         sourceWriter.println("public boolean isLoaded() {");
         sourceWriter.indent();
@@ -139,12 +143,19 @@ public class CodeSplitMapperGenerator extends Generator {
         sourceWriter.println();
         sourceWriter.println("public void onSuccess() {");
         sourceWriter.indent();
+        if (registration != null) {
+            sourceWriter.println(registration);
+        }
         sourceWriter.println("loaded = true;");
         sourceWriter.println("if (place == null) {");
         sourceWriter.indent();
         sourceWriter.println("callback.onSuccess(null);");
         sourceWriter.outdent();
 
+        sourceWriter.println("} else if (callback instanceof AbortableCallback && ((AbortableCallback) callback).isAborted()) {");
+        sourceWriter.indent();
+        sourceWriter.println("// The navigation that requested the Activity was dropped, so don't construct it.");
+        sourceWriter.outdent();
         sourceWriter.println("} else {");
         sourceWriter.indent();
         sourceWriter.println("try {");
@@ -176,7 +187,7 @@ public class CodeSplitMapperGenerator extends Generator {
     }
 
     protected void writeGetActivityMethod(TreeLogger logger, SourceWriter sourceWriter, List<JClassType> codeSplitPlaces) throws NotFoundException, UnableToCompleteException {
-        sourceWriter.println("public void getActivity(final SlottedPlace place) {");
+        sourceWriter.println("public Activity getActivity(final SlottedPlace place) {");
         sourceWriter.indent();
         for (JClassType place: codeSplitPlaces) {
             generateIf(logger, sourceWriter, place);
@@ -1,7 +1,9 @@
 package com.googlecode.slotted.rebind;
 
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.List;
 
 import com.google.gwt.core.client.GWT;
@@ -40,35 +42,21 @@ public class PlaceFactoryGenerator extends Generator {
             SourceWriter sourceWriter = getSourceWriter(clazz, context, logger);
 
             if (sourceWriter != null) {
-                sourceWriter.println("public " +
-                        placeType.getQualifiedSourceName() +
-                        " newInstance(Class placeClass) {");
-
                 JClassType[] types = typeOracle.getTypes();
 	            List<String> scanPackages = getScanPackages(context, clazz);
 
-                int count = 0;
+                ArrayList<JClassType> places = new ArrayList<JClassType>();
                 for (int i = 0; i < types.length; i++) {
+                    // Places in a CodeSplitRegistry are created by the registry, so they stay out of this fragment.
                     if (!types[i].isAbstract() && types[i].isDefaultInstantiable() &&
-                            types[i].isAssignableTo(placeType) && isInScanPackages(types[i], scanPackages))
+                            types[i].isAssignableTo(placeType) && isInScanPackages(types[i], scanPackages) &&
+                            PlaceRegistryGenerator.getRegistryMapper(typeOracle, types[i]) == null)
                     {
-                        if (count == 0) {
-                            sourceWriter.print("   if(");
-                        } else {
-                            sourceWriter.print("   else if(");
-                        }
-                        sourceWriter.println(types[i].getQualifiedSourceName()
-                                + ".class.equals(placeClass)) {"
-                                + " return GWT.create( "
-                                + types[i].getQualifiedSourceName() + ".class);"
-                                + "}");
-
-                        count++;
+                        places.add(types[i]);
                     }
                 }
 
-                sourceWriter.println("return null;");
-                sourceWriter.println("}");
+                writeNewInstance(sourceWriter, places);
                 sourceWriter.commit(logger);
                 logger.log(TreeLogger.DEBUG, "Done Generating source for "
                         + clazz.getName(), null);
@@ -83,6 +71,43 @@ public class PlaceFactoryGenerator extends Generator {
         return clazz.getQualifiedSourceName() + "Wrapper";
     }
 
+    /**
+     * Writes newInstance(Class) as a switch on an id looked up in an identity table of the Place classes, so
+     * creating a Place doesn't compare the class against every Place.  The table is filled on the first call.
+     */
+    static void writeNewInstance(SourceWriter sourceWriter, List<JClassType> places) {
+        sourceWriter.println("private static final Class[] placeClasses = {");
+        for (JClassType place: places) {
+            sourceWriter.println("    " + place.getQualifiedSourceName() + ".class,");
+        }
+        sourceWriter.println("};");
+        sourceWriter.println();
+        sourceWriter.println("private IdentityHashMap<Class, Integer> placeIds;");
+        sourceWriter.println();
+
+        sourceWriter.println("public Place newInstance(Class placeClass) {");
+        sourceWriter.indent();
+        sourceWriter.println("if (placeIds == null) {");
+        sourceWriter.println("    placeIds = new IdentityHashMap<Class, Integer>();");
+        sourceWriter.println("    for (int i = 0; i < placeClasses.length; i++) {");
+        sourceWriter.println("        placeIds.put(placeClasses[i], i);");
+        sourceWriter.println("    }");
+        sourceWriter.println("}");
+        sourceWriter.println("Integer id = placeIds.get(placeClass);");
+        sourceWriter.println("if (id == null) {");
+        sourceWriter.println("    return null;");
+        sourceWriter.println("}");
+        sourceWriter.println("switch (id) {");
+        for (int i = 0; i < places.size(); i++) {
+            sourceWriter.println("    case " + i + ": return GWT.create(" + places.get(i).getQualifiedSourceName() +
+                    ".class);");
+        }
+        sourceWriter.println("    default: return null;");
+        sourceWriter.println("}");
+        sourceWriter.outdent();
+        sourceWriter.println("}");
+    }
+
 	private List<String> getScanPackages(GeneratorContext context, JClassType clazz) {
 		ScanPackages scanAnnotation = clazz.getAnnotation(ScanPackages.class);
 		if (scanAnnotation != null) {
@@ -123,6 +148,8 @@ public class PlaceFactoryGenerator extends Generator {
         String implementName = PlaceFactory.class.getName();
         composer.addImplementedInterface(implementName);
         composer.addImport(GWT.class.getCanonicalName());
+        composer.addImport(Place.class.getCanonicalName());
+        composer.addImport(IdentityHashMap.class.getCanonicalName());
 
         PrintWriter printWriter = context.tryCreate(logger, packageName,simpleName);
 
@@ -0,0 +1,136 @@
+package com.googlecode.slotted.rebind;
+
+import java.io.PrintWriter;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import com.google.gwt.core.client.GWT;
+import com.google.gwt.core.ext.Generator;
+import com.google.gwt.core.ext.GeneratorContext;
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.core.ext.UnableToCompleteException;
+import com.google.gwt.core.ext.typeinfo.JClassType;
+import com.google.gwt.core.ext.typeinfo.NotFoundException;
+import com.google.gwt.core.ext.typeinfo.TypeOracle;
+import com.google.gwt.place.shared.Place;
+import com.google.gwt.place.shared.PlaceTokenizer;
+import com.google.gwt.user.rebind.ClassSourceFileComposerFactory;
+import com.google.gwt.user.rebind.SourceWriter;
+import com.googlecode.slotted.client.CodeSplit;
+import com.googlecode.slotted.client.CodeSplitRegistry;
+import com.googlecode.slotted.client.PlaceRegistry;
+
+/**
+ * Generates the {@link PlaceRegistry} for a CodeSplitMapper marked with {@link CodeSplitRegistry}.  This isn't
+ * bound to a type in the module, it is called by the CodeSplitMapper generators, which create the registry in
+ * their fragment.
+ */
+public class PlaceRegistryGenerator {
+    private static String NamePostfix = "Registry";
+
+    /**
+     * Returns true if the mapper interface is marked with {@link CodeSplitRegistry}.
+     */
+    public static boolean isRegistryMapper(JClassType mapperType) {
+        return mapperType != null && mapperType.isAnnotationPresent(CodeSplitRegistry.class);
+    }
+
+    /**
+     * Gets the mapper interface that registers the Place, if the Place's {@link CodeSplit} mapper is marked
+     * with {@link CodeSplitRegistry}.
+     *
+     * @return The mapper interface, or null if the Place is registered in the initial fragment.
+     */
+    public static JClassType getRegistryMapper(TypeOracle typeOracle, JClassType place) {
+        CodeSplit annotation = place.getAnnotation(CodeSplit.class);
+        if (annotation != null) {
+            JClassType mapperType = typeOracle.findType(annotation.value().getCanonicalName());
+            if (isRegistryMapper(mapperType)) {
+                return mapperType;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Generates the registry if the mapper is marked with {@link CodeSplitRegistry}, and returns the statement
+     * the mapper runs in its fragment to register it.
+     *
+     * @return The registration statement, or null if the mapper doesn't have a registry.
+     */
+    public String generateRegistration(TreeLogger logger, GeneratorContext context, JClassType mapperType,
+            List<JClassType> places) throws UnableToCompleteException
+    {
+        if (!isRegistryMapper(mapperType)) {
+            return null;
+        }
+        String registryClass = generate(logger, context, mapperType, places);
+        String mapperClass = mapperType.getQualifiedSourceName() + ".class";
+        return "if (!" + PlaceRegistry.class.getCanonicalName() + ".registries.containsKey(" + mapperClass + ")) {" +
+                " " + PlaceRegistry.class.getCanonicalName() + ".registries.put(" + mapperClass + ", new " +
+                registryClass + "()); }";
+    }
+
+    /**
+     * Generates the registry for the mapper's Places.
+     *
+     * @return The qualified name of the registry class.
+     */
+    public String generate(TreeLogger logger, GeneratorContext context, JClassType mapperType,
+            List<JClassType> places) throws UnableToCompleteException
+    {
+        String packageName = mapperType.getPackage().getName();
+        String simpleName = mapperType.getSimpleSourceName() + NamePostfix;
+        ClassSourceFileComposerFactory composer = new ClassSourceFileComposerFactory(packageName, simpleName);
+        composer.addImplementedInterface(PlaceRegistry.class.getCanonicalName());
+        composer.addImport(GWT.class.getCanonicalName());
+        composer.addImport(IdentityHashMap.class.getCanonicalName());
+        composer.addImport(Place.class.getCanonicalName());
+        composer.addImport(PlaceTokenizer.class.getCanonicalName());
+
+        PrintWriter printWriter = context.tryCreate(logger, packageName, simpleName);
+        if (printWriter != null) {
+            try {
+                SourceWriter sourceWriter = composer.createSourceWriter(context, printWriter);
+                writeRegistry(logger, context, sourceWriter, places);
+                sourceWriter.commit(logger);
+            } catch (NotFoundException e) {
+                logger.log(TreeLogger.ERROR, "Error Generating registry for " + mapperType.getName(), e);
+                throw new UnableToCompleteException();
+            }
+        }
+
+        return packageName + "." + simpleName;
+    }
+
+    private void writeRegistry(TreeLogger logger, GeneratorContext context, SourceWriter sourceWriter,
+            List<JClassType> places) throws NotFoundException, UnableToCompleteException
+    {
+        AutoHistoryMapperGenerator mapperGenerator = new AutoHistoryMapperGenerator();
+        JClassType tokenizerType = context.getTypeOracle().getType(PlaceTokenizer.class.getName());
+
+        sourceWriter.println("private final PlaceTokenizer[] tokenizers = {");
+        for (JClassType place: places) {
+            JClassType tokenizer = mapperGenerator.getTokenizer(place, tokenizerType);
+            sourceWriter.println("    " + mapperGenerator.getTokenizerParam(logger, context, place, tokenizer) + ",");
+        }
+        sourceWriter.println("};");
+        sourceWriter.println();
+
+        sourceWriter.println("public PlaceTokenizer getTokenizer(String name) {");
+        sourceWriter.indent();
+        sourceWriter.println("switch (name) {");
+        for (int i = 0; i < places.size(); i++) {
+            JClassType place = places.get(i);
+            String name = mapperGenerator.getName(place, mapperGenerator.getTokenizer(place, tokenizerType));
+            sourceWriter.println("    case \"" + Generator.escape(name) + "\": return tokenizers[" + i + "];");
+        }
+        sourceWriter.println("    default: return null;");
+        sourceWriter.println("}");
+        sourceWriter.outdent();
+        sourceWriter.println("}");
+        sourceWriter.println();
+
+        PlaceFactoryGenerator.writeNewInstance(sourceWriter, places);
+    }
+}